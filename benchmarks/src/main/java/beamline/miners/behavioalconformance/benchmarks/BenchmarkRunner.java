@@ -0,0 +1,39 @@
+package beamline.miners.behavioalconformance.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar. Runs the benchmarks with the GC profiler, so that the allocation
+ * rate is reported next to throughput and average time, and stores the results in a JSON file named after
+ * the measured release of the conformance checker, so that runs of different releases can be compared.
+ * All the standard JMH command line options are accepted (e.g., a regular expression to select the
+ * benchmarks, or <tt>-rf</tt>/<tt>-rff</tt> to change the results file).
+ * 
+ * <pre>
+ * java -jar target/benchmarks.jar [JMH options]
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		ChainedOptionsBuilder options = new OptionsBuilder()
+				.parent(commandLine)
+				.addProfiler(GCProfiler.class);
+		
+		// the options of the command line take precedence
+		if (!commandLine.getResultFormat().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON);
+		}
+		if (!commandLine.getResult().hasValue()) {
+			String version = BenchmarkRunner.class.getPackage().getImplementationVersion();
+			options.result("jmh-result-" + (version == null ? "dev" : version) + ".json");
+		}
+		new Runner(options.build()).run();
+	}
+}
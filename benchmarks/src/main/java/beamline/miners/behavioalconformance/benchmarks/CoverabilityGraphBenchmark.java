@@ -0,0 +1,63 @@
+package beamline.miners.behavioalconformance.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.transitionsystem.CoverabilityGraph;
+import org.processmining.models.semantics.petrinet.Marking;
+
+import beamline.miners.behavioalconformance.utils.CGHelper;
+
+/**
+ * Cost of {@link CGHelper#generate(Petrinet, Marking)} and of its parallel counterpart
+ * {@link CGHelper#generate(Petrinet, Marking, ForkJoinPool)} on nets with heavy concurrency, where the
+ * number of reachable markings grows exponentially with the number of parallel branches.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+@State(Scope.Benchmark)
+public class CoverabilityGraphBenchmark {
+
+	@Param({ "2", "4", "6" })
+	public int branches;
+
+	@Param({ "2", "4" })
+	public int length;
+
+	private Petrinet net;
+	private Marking marking;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		Pair<Petrinet, Marking> pair = SyntheticNets.parallelSequences(branches, length);
+		net = pair.getLeft();
+		marking = pair.getRight();
+	}
+	
+	@Benchmark
+	public CoverabilityGraph generate() {
+		return CGHelper.generate(net, marking);
+	}
+	
+	@Benchmark
+	public CoverabilityGraph generateParallel() {
+		return CGHelper.generate(net, marking, ForkJoinPool.commonPool());
+	}
+}
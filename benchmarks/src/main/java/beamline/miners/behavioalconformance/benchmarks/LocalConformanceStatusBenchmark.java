@@ -0,0 +1,79 @@
+package beamline.miners.behavioalconformance.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.semantics.petrinet.Marking;
+
+import beamline.events.BEvent;
+import beamline.miners.behavioalconformance.model.LocalConformanceStatus;
+import beamline.miners.behavioalconformance.model.LocalModelStructure;
+import beamline.miners.behavioalconformance.model.OnlineConformanceScore;
+
+/**
+ * Per-event cost of the replay of a single process instance, i.e., of
+ * {@link LocalConformanceStatus#replayEvent(BEvent)} and of its allocation-free counterpart
+ * {@link LocalConformanceStatus#replayActivity(int)}. A complete trace of the net is replayed over and
+ * over on the same instance.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocalConformanceStatusBenchmark {
+
+	@Param({ "sequence", "choice", "parallel" })
+	public String shape;
+
+	@Param({ "5", "10" })
+	public int activities;
+
+	private LocalConformanceStatus status;
+	private BEvent[] events;
+	private int[] activityIds;
+	private int next = 0;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		Pair<Petrinet, Marking> net = SyntheticNets.build(shape, activities);
+		LocalModelStructure lms = new LocalModelStructure(net.getLeft(), net.getRight());
+		status = new LocalConformanceStatus(lms);
+		
+		String[] trace = SyntheticNets.trace(shape, activities);
+		events = new BEvent[trace.length];
+		activityIds = new int[trace.length];
+		for (int i = 0; i < trace.length; i++) {
+			events[i] = BEvent.create("process", "case", trace[i]);
+			activityIds[i] = lms.getActivityId(trace[i]);
+		}
+	}
+	
+	@Benchmark
+	public OnlineConformanceScore replayEvent() {
+		OnlineConformanceScore score = status.replayEvent(events[next]);
+		next = (next + 1) % events.length;
+		return score;
+	}
+	
+	@Benchmark
+	public double replayActivity() {
+		status.replayActivity(activityIds[next]);
+		next = (next + 1) % activityIds.length;
+		return status.getConformance();
+	}
+}
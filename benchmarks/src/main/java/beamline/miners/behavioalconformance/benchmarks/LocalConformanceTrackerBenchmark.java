@@ -0,0 +1,80 @@
+package beamline.miners.behavioalconformance.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.semantics.petrinet.Marking;
+
+import beamline.events.BEvent;
+import beamline.miners.behavioalconformance.model.LocalConformanceTracker;
+import beamline.miners.behavioalconformance.model.LocalModelStructure;
+import beamline.miners.behavioalconformance.model.OnlineConformanceScore;
+
+/**
+ * Per-event cost of {@link LocalConformanceTracker#replayEvent(BEvent)} on events of already known cases,
+ * with the tracker filled up to its capacity. The cost is expected to be flat with respect to the number
+ * of stored cases. The largest configuration needs a heap of several gigabytes.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms12g", "-Xmx12g" })
+@State(Scope.Benchmark)
+public class LocalConformanceTrackerBenchmark {
+
+	private static final int ACTIVITIES = 10;
+	private static final int EVENTS = 1 << 16;
+
+	@Param({ "1000", "10000", "100000", "1000000", "10000000" })
+	public int storedCases;
+
+	private LocalConformanceTracker tracker;
+	private BEvent[] events;
+	private int next = 0;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		Pair<Petrinet, Marking> net = SyntheticNets.sequence(ACTIVITIES);
+		LocalModelStructure lms = new LocalModelStructure(net.getLeft(), net.getRight());
+		tracker = new LocalConformanceTracker(lms, storedCases);
+		
+		// fill the tracker up to its capacity
+		for (int i = 0; i < storedCases; i++) {
+			tracker.replayEvent(BEvent.create("process", caseId(i), SyntheticNets.activityName(0)));
+		}
+		
+		// events of random known cases
+		Random random = new Random(42);
+		events = new BEvent[EVENTS];
+		for (int i = 0; i < EVENTS; i++) {
+			events[i] = BEvent.create(
+					"process",
+					caseId(random.nextInt(storedCases)),
+					SyntheticNets.activityName(random.nextInt(ACTIVITIES)));
+		}
+	}
+	
+	@Benchmark
+	public OnlineConformanceScore replayKnownCase() {
+		return tracker.replayEvent(events[next++ & (EVENTS - 1)]);
+	}
+	
+	private static String caseId(int i) {
+		return "case-" + i;
+	}
+}
@@ -0,0 +1,79 @@
+package beamline.miners.behavioalconformance.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.semantics.petrinet.Marking;
+
+import beamline.miners.behavioalconformance.model.DirectFollowingRelation;
+import beamline.miners.behavioalconformance.model.LocalModelStructure;
+
+/**
+ * Cost of the lookup of a relation in the {@link LocalModelStructure}, both by labels and by activity
+ * ids, on random pairs of activities of the net (allowed and not allowed).
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocalModelStructureBenchmark {
+
+	private static final int RELATIONS = 1 << 10;
+
+	@Param({ "sequence", "choice", "parallel" })
+	public String shape;
+
+	@Param({ "5", "10" })
+	public int activities;
+
+	private LocalModelStructure lms;
+	private DirectFollowingRelation[] relations;
+	private int[] lefts;
+	private int[] rights;
+	private int next = 0;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		Pair<Petrinet, Marking> net = SyntheticNets.build(shape, activities);
+		lms = new LocalModelStructure(net.getLeft(), net.getRight());
+		
+		Random random = new Random(42);
+		relations = new DirectFollowingRelation[RELATIONS];
+		lefts = new int[RELATIONS];
+		rights = new int[RELATIONS];
+		for (int i = 0; i < RELATIONS; i++) {
+			String left = SyntheticNets.activityName(random.nextInt(activities));
+			String right = SyntheticNets.activityName(random.nextInt(activities));
+			relations[i] = new DirectFollowingRelation(left, right);
+			lefts[i] = lms.getActivityId(left);
+			rights[i] = lms.getActivityId(right);
+		}
+	}
+	
+	@Benchmark
+	public boolean isAllowedByLabels() {
+		return lms.isAllowed(relations[next++ & (RELATIONS - 1)]);
+	}
+	
+	@Benchmark
+	public boolean isAllowedByIds() {
+		int i = next++ & (RELATIONS - 1);
+		return lms.isAllowed(lefts[i], rights[i]);
+	}
+}
@@ -0,0 +1,73 @@
+package beamline.miners.behavioalconformance.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.transitionsystem.CoverabilityGraph;
+import org.processmining.models.semantics.petrinet.Marking;
+
+import beamline.miners.behavioalconformance.model.LocalModelStructure;
+import beamline.miners.behavioalconformance.utils.CGHelper;
+import beamline.miners.behavioalconformance.utils.PetrinetHelper;
+
+/**
+ * Cost of the steps of the construction of the {@link LocalModelStructure}, on nets of growing size:
+ * the coverability graph, the unfolding, the dual net and the whole preprocessing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModelConstructionBenchmark {
+
+	@Param({ "sequence", "choice", "parallel" })
+	public String shape;
+
+	@Param({ "5", "10", "15" })
+	public int activities;
+
+	private Petrinet net;
+	private Marking marking;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		Pair<Petrinet, Marking> pair = SyntheticNets.build(shape, activities);
+		net = pair.getLeft();
+		marking = pair.getRight();
+	}
+	
+	@Benchmark
+	public CoverabilityGraph coverabilityGraph() {
+		return CGHelper.generate(net, marking);
+	}
+	
+	@Benchmark
+	public Pair<Petrinet, Marking> unfold() throws Exception {
+		return PetrinetHelper.unfold(net);
+	}
+	
+	@Benchmark
+	public Pair<Petrinet, Marking> computeDual() {
+		return PetrinetHelper.computeDual(net);
+	}
+	
+	@Benchmark
+	public LocalModelStructure localModelStructure() throws Exception {
+		return new LocalModelStructure(net, marking);
+	}
+}
@@ -0,0 +1,175 @@
+package beamline.miners.behavioalconformance.benchmarks;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.graphbased.directed.petrinet.impl.PetrinetFactory;
+import org.processmining.models.semantics.petrinet.Marking;
+
+/**
+ * Generator of parametrized workflow nets used as input of the benchmarks. Activities are labeled
+ * <tt>A0</tt>, <tt>A1</tt>, ... Besides the plain sequence, nets can have an exclusive choice or a
+ * parallel block between the first and the last activity: the size of the coverability graph of the
+ * parallel net grows exponentially with the number of activities.
+ */
+public class SyntheticNets {
+
+	/**
+	 * Builds a net with the given number of activities in sequence
+	 * 
+	 * @param activities
+	 * @return the net and its initial marking
+	 */
+	public static Pair<Petrinet, Marking> sequence(int activities) {
+		Petrinet net = PetrinetFactory.newPetrinet("sequence-" + activities);
+		Place source = net.addPlace("source");
+		Place current = source;
+		for (int i = 0; i < activities; i++) {
+			Transition t = net.addTransition(activityName(i));
+			Place next = net.addPlace("p" + i);
+			net.addArc(current, t);
+			net.addArc(t, next);
+			current = next;
+		}
+		return Pair.of(net, initialMarking(source));
+	}
+	
+	/**
+	 * Builds a net with the first activity, followed by an exclusive choice among the intermediate
+	 * activities, followed by the last activity
+	 * 
+	 * @param activities the number of activities, at least 3
+	 * @return the net and its initial marking
+	 */
+	public static Pair<Petrinet, Marking> choice(int activities) {
+		Petrinet net = PetrinetFactory.newPetrinet("choice-" + activities);
+		Place source = net.addPlace("source");
+		Place split = net.addPlace("split");
+		Place join = net.addPlace("join");
+		Place sink = net.addPlace("sink");
+		
+		Transition first = net.addTransition(activityName(0));
+		net.addArc(source, first);
+		net.addArc(first, split);
+		for (int i = 1; i < activities - 1; i++) {
+			Transition t = net.addTransition(activityName(i));
+			net.addArc(split, t);
+			net.addArc(t, join);
+		}
+		Transition last = net.addTransition(activityName(activities - 1));
+		net.addArc(join, last);
+		net.addArc(last, sink);
+		return Pair.of(net, initialMarking(source));
+	}
+	
+	/**
+	 * Builds a net with the first activity, followed by all the intermediate activities in parallel,
+	 * followed by the last activity
+	 * 
+	 * @param activities the number of activities, at least 3
+	 * @return the net and its initial marking
+	 */
+	public static Pair<Petrinet, Marking> parallel(int activities) {
+		Petrinet net = PetrinetFactory.newPetrinet("parallel-" + activities);
+		Place source = net.addPlace("source");
+		Place sink = net.addPlace("sink");
+		
+		Transition first = net.addTransition(activityName(0));
+		Transition last = net.addTransition(activityName(activities - 1));
+		net.addArc(source, first);
+		for (int i = 1; i < activities - 1; i++) {
+			Transition t = net.addTransition(activityName(i));
+			Place before = net.addPlace("b" + i);
+			Place after = net.addPlace("a" + i);
+			net.addArc(first, before);
+			net.addArc(before, t);
+			net.addArc(t, after);
+			net.addArc(after, last);
+		}
+		net.addArc(last, sink);
+		return Pair.of(net, initialMarking(source));
+	}
+	
+	/**
+	 * Builds a net with the first activity, followed by <tt>branches</tt> parallel sequences of
+	 * <tt>length</tt> activities each, followed by the last activity. The coverability graph has
+	 * <tt>(length + 1)^branches</tt> states for the parallel block.
+	 * 
+	 * @param branches the number of parallel branches
+	 * @param length the number of activities of each branch
+	 * @return the net and its initial marking
+	 */
+	public static Pair<Petrinet, Marking> parallelSequences(int branches, int length) {
+		Petrinet net = PetrinetFactory.newPetrinet("parallel-" + branches + "x" + length);
+		Place source = net.addPlace("source");
+		Place sink = net.addPlace("sink");
+		
+		Transition first = net.addTransition(activityName(0));
+		Transition last = net.addTransition(activityName(branches * length + 1));
+		net.addArc(source, first);
+		for (int b = 0; b < branches; b++) {
+			Place current = net.addPlace("b" + b + "-0");
+			net.addArc(first, current);
+			for (int i = 0; i < length; i++) {
+				Transition t = net.addTransition(activityName(1 + b * length + i));
+				Place next = net.addPlace("b" + b + "-" + (i + 1));
+				net.addArc(current, t);
+				net.addArc(t, next);
+				current = next;
+			}
+			net.addArc(current, last);
+		}
+		net.addArc(last, sink);
+		return Pair.of(net, initialMarking(source));
+	}
+	
+	/**
+	 * Builds a net of the given shape
+	 * 
+	 * @param shape one of <tt>sequence</tt>, <tt>choice</tt> or <tt>parallel</tt>
+	 * @param activities the number of activities
+	 * @return the net and its initial marking
+	 */
+	public static Pair<Petrinet, Marking> build(String shape, int activities) {
+		switch (shape) {
+		case "sequence":
+			return sequence(activities);
+		case "choice":
+			return choice(activities);
+		case "parallel":
+			return parallel(activities);
+		default:
+			throw new IllegalArgumentException("Unknown shape: " + shape);
+		}
+	}
+	
+	/**
+	 * Returns a complete trace of a net of the given shape: all the activities of the sequence or of the
+	 * parallel block (in index order), or the first branch of the choice
+	 * 
+	 * @param shape one of <tt>sequence</tt>, <tt>choice</tt> or <tt>parallel</tt>
+	 * @param activities the number of activities
+	 * @return the activity names of the trace
+	 */
+	public static String[] trace(String shape, int activities) {
+		if ("choice".equals(shape)) {
+			return new String[] { activityName(0), activityName(1), activityName(activities - 1) };
+		}
+		String[] trace = new String[activities];
+		for (int i = 0; i < activities; i++) {
+			trace[i] = activityName(i);
+		}
+		return trace;
+	}
+	
+	public static String activityName(int i) {
+		return "A" + i;
+	}
+	
+	private static Marking initialMarking(Place source) {
+		Marking marking = new Marking();
+		marking.add(source);
+		return marking;
+	}
+}
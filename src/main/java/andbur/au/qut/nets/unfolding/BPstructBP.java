@@ -16,17 +16,20 @@
  */
 package andbur.au.qut.nets.unfolding;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
 
 import org.processmining.framework.util.Pair;
 
@@ -53,6 +56,18 @@ public class BPstructBP extends DNodeBP {
 
 	public HashSet<String> silentTransitions = new HashSet<>();
 
+	// events of the branching process indexed by the hash value of the cut
+	// reached by their prime configuration
+	private Map<Integer, List<DNode>> eventsByCutHash = new HashMap<Integer, List<DNode>>();
+	private Set<DNode> indexedEvents = new HashSet<DNode>();
+	// relations of the prime cuts of the events already compared in the
+	// EQUAL_DFS mode
+	private Map<DNode, CutRelations> cutRelations = new HashMap<DNode, CutRelations>();
+	// causal past of the nodes, see #getCausalPast(DNode)
+	private Map<DNode, BitSet> causalPast = new HashMap<DNode, BitSet>();
+	private Map<DNode, Integer> nodeIndexes = new HashMap<DNode, Integer>();
+	private List<DNode> indexedNodes = new ArrayList<DNode>();
+
 	public BPstructBP(DNodeSys system, Options options) {
 		super(system, options);
 	}
@@ -118,25 +133,20 @@ public class BPstructBP extends DNodeBP {
 		// get hash value of the cut reached by 'newEvent'
 		int newEventHash = getPrimeConfiguration_CutHash().get(newEvent);
 
-		// check whether 'newEvent' is a cut-off event by comparing to all other
-		// given events
-		Iterator<DNode> it = eventsToCompare.iterator();
-
-		while (it.hasNext()) {
-			DNode e = it.next();
-
-			// retrieve the cut reached by the old event 'e'
-			DNode[] oldCut = bp.getPrimeCut(e,
-					getOptions().searchStrat_lexicographic,
-					getOptions().searchStrat_lexicographic);
-
-			HashSet<String> oldCLabel = new HashSet<String>();
-			for (int i = 0; i < oldCut.length; i++)
-				oldCLabel.add(properName(oldCut[i]));
+		// check whether 'newEvent' is a cut-off event by comparing to the other
+		// given events which reach a cut with the same hash value, the other
+		// ones cannot be equivalent
+		indexEvents(eventsToCompare);
+		List<DNode> candidates = eventsByCutHash.get(newEventHash);
+		if (candidates == null)
+			return false;
 
-			HashSet<String> newCLabel = new HashSet<String>();
-			for (int i = 0; i < newCut.length; i++)
-				newCLabel.add(properName(newCut[i]));
+		// events may be indexed while checking again for cut-offs, only the
+		// ones known now are compared
+		int candidatesCount = candidates.size();
+		CutRelations newCutRelations = null;
+		for (int c = 0; c < candidatesCount; c++) {
+			DNode e = candidates.get(c);
 
 			// do not check the event that has just been added, the cuts would
 			// be equal...
@@ -165,6 +175,11 @@ public class BPstructBP extends DNodeBP {
 			if (getPrimeConfiguration_CutHash().get(e) != newEventHash)
 				continue;
 
+			// retrieve the cut reached by the old event 'e'
+			DNode[] oldCut = bp.getPrimeCut(e,
+					getOptions().searchStrat_lexicographic,
+					getOptions().searchStrat_lexicographic);
+
 			// cuts of different lengths cannot reach the same state, skip
 			if (newCut.length != oldCut.length)
 				continue;
@@ -207,8 +222,12 @@ public class BPstructBP extends DNodeBP {
 			
 			if (mode == MODE.EQUAL_PREDS) 
 				equalPredecessors = checkPredecessor(newEvent, e);
-			if(mode == MODE.EQUAL_DFS)
-				equalPredecessors = checkDirectlyFollows(newCut, oldCut);
+			if(mode == MODE.EQUAL_DFS) {
+				// the relations of the new cut are the same for all candidates
+				if (newCutRelations == null)
+					newCutRelations = new CutRelations(newCut);
+				equalPredecessors = checkDirectlyFollows(newCutRelations, getCutRelations(e, oldCut));
+			}
 			
 			// The prime configuration of 'e' is either smaller or
 			// lexicographically
@@ -234,17 +253,45 @@ public class BPstructBP extends DNodeBP {
 		return false;
 	}
 
-	private boolean checkDirectlyFollows(DNode[] newCut, DNode[] oldCut) {
-		HashSet<String> labelsNewCut = getMaximalLabels(newCut);
-		HashSet<String> labelsOldCut = getMaximalLabels(oldCut);
+	/**
+	 * Adds to {@link #eventsByCutHash} the events whose prime configuration
+	 * has been computed since the last call. Events are kept in the order in
+	 * which they are first met.
+	 * 
+	 * @param events
+	 *            all the events of the branching process
+	 */
+	private void indexEvents(Iterable<DNode> events) {
+		if (events instanceof Collection
+				&& ((Collection<?>) events).size() == indexedEvents.size())
+			return;
+		for (DNode e : events) {
+			if (indexedEvents.contains(e))
+				continue;
+			Integer hash = getPrimeConfiguration_CutHash().get(e);
+			if (hash == null)
+				continue;
+			indexedEvents.add(e);
+			List<DNode> sameHash = eventsByCutHash.get(hash);
+			if (sameHash == null) {
+				sameHash = new ArrayList<DNode>();
+				eventsByCutHash.put(hash, sameHash);
+			}
+			sameHash.add(e);
+		}
+	}
+
+	private boolean checkDirectlyFollows(CutRelations newCut, CutRelations oldCut) {
+		HashSet<String> labelsNewCut = newCut.getMaximalLabels();
+		HashSet<String> labelsOldCut = oldCut.getMaximalLabels();
 		
 		if(labelsNewCut.size() != labelsOldCut.size())
 			return false;
 		else if(!(labelsNewCut.containsAll(labelsOldCut) && labelsOldCut.containsAll(labelsNewCut)))
 			return false;
 		
-		HashMultimap<Short, Short> reference_cutoff = getRelations(newCut);
-		HashMultimap<Short, Short> reference_corr = getRelations(oldCut);
+		HashMultimap<Short, Short> reference_cutoff = newCut.getRelations();
+		HashMultimap<Short, Short> reference_corr = oldCut.getRelations();
 		
 		if(reference_corr.isEmpty() || reference_cutoff.isEmpty())
 			return false;
@@ -252,91 +299,137 @@ public class BPstructBP extends DNodeBP {
 		return reference_corr.equals(reference_cutoff);
 	}
 
-	private HashSet<String> getMaximalLabels(DNode[] cut) {
-		HashSet<String> maximalLabels = new HashSet<>();
-		
-		for(int i =0; i < cut.length; i++) {
-			if(cut[i].isEvent)
-				maximalLabels.add(properName(cut[i]));
-			else 
-				maximalLabels.add(properName(cut[i].pre[0]));
+	/**
+	 * Returns the relations of the prime cut of the given event, computing
+	 * them the first time the event is compared
+	 * 
+	 * @param event
+	 *            the event
+	 * @param primeCut
+	 *            the prime cut of the event
+	 * @return the relations of the cut
+	 */
+	private CutRelations getCutRelations(DNode event, DNode[] primeCut) {
+		CutRelations relations = cutRelations.get(event);
+		if (relations == null) {
+			relations = new CutRelations(primeCut);
+			cutRelations.put(event, relations);
 		}
-			
-		
-		return maximalLabels;
+		return relations;
 	}
 
-	private HashMultimap<Short, Short> getRelations(DNode[] cut) {
-		HashMultimap<Short, Short> relations = HashMultimap.<Short, Short> create();
-		LinkedList<DNode> indexesNodes = new LinkedList<DNode>();
-		
-		for(int i = 0; i < cut.length; i++) {
-			Set<DNode> pred = cut[i].getAllPredecessors();
-			
-			for(DNode node : pred) 
-				if(node != cut[i] && !node.isEvent && node.pre!=null && node.post != null && node.pre.length > 0 && node.post.length > 0) {
-					DNode correctPost = null;
-					for(int k = 0; k < node.post.length; k++)
-						if(pred.contains(node.post[k])) {
-							correctPost = node.post[k];
-							break;
-						}
-					
-					relations.put(node.pre[0].id, correctPost.id);
-					
-					if(!indexesNodes.contains(node.pre[0]))
-						indexesNodes.add(node.pre[0]);
-					if(!indexesNodes.contains(correctPost))
-						indexesNodes.add(correctPost);
+	/**
+	 * The labels of the maximal events of a cut and the relations among the
+	 * events of its configuration, used by the {@link MODE#EQUAL_DFS}
+	 * criterion. Both are computed on first use.
+	 */
+	private class CutRelations {
+
+		private final DNode[] cut;
+		private HashSet<String> maximalLabels = null;
+		private HashMultimap<Short, Short> relations = null;
+
+		CutRelations(DNode[] cut) {
+			this.cut = cut;
+		}
+
+		HashSet<String> getMaximalLabels() {
+			if (maximalLabels == null) {
+				maximalLabels = new HashSet<>();
+				for(int i =0; i < cut.length; i++) {
+					if(cut[i].isEvent)
+						maximalLabels.add(properName(cut[i]));
+					else 
+						maximalLabels.add(properName(cut[i].pre[0]));
 				}
+			}
+			return maximalLabels;
 		}
-		
-		short[][] graph = new short[indexesNodes.size()][indexesNodes.size()];
-		short[][] graphInv = new short[indexesNodes.size()][indexesNodes.size()];
-		for(int i = 0; i < indexesNodes.size(); i++)
-			for(int j = 0; j < indexesNodes.size(); j++)
-				if(relations.containsEntry(indexesNodes.get(i).id, indexesNodes.get(j).id) || i == j) 
-					graph[i][j] = 1;
-		
-		short[][] tClosure = getTransitiveClosure(graph);
-		for(int i = 0; i < tClosure.length; i++)
-			for(int j = 0; j < tClosure.length; j++)
-				if(tClosure[i][j] != 1 && tClosure[j][i] != 1 && !relations.containsEntry(indexesNodes.get(i).id, indexesNodes.get(j).id))
-					relations.put(indexesNodes.get(i).id, indexesNodes.get(j).id);
-		
-		return relations;
-	}
 
-	private short[][] getTransitiveClosure(short[][] graph) {
-		printGraph(graph);
-		int V = graph.length;
-		
-		short reach[][] = new short[V][V];
-        int  i, j, k;
- 
-        for (i = 0; i < V; i++)
-            for (j = 0; j < V; j++)
-                reach[i][j] = graph[i][j];
- 
-        for (k = 0; k < V; k++)
-            for (i = 0; i < V; i++)
-                for (j = 0; j < V; j++)
-                		if((reach[i][j]!=0) || ((reach[i][k]!=0) && (reach[k][j]!=0)))
-                    reach[i][j] = 1;
-
-        printGraph(reach);
-        
-        return reach;
+		/**
+		 * The pairs of (ids of) events in a causal relation, plus the pairs of
+		 * events which are concurrent, i.e., neither of them reaches the other
+		 * in the transitive closure of the causal relation
+		 */
+		HashMultimap<Short, Short> getRelations() {
+			if (relations != null)
+				return relations;
+			relations = HashMultimap.<Short, Short> create();
+			Map<DNode, Integer> indexesNodes = new LinkedHashMap<DNode, Integer>();
+			
+			for(int i = 0; i < cut.length; i++) {
+				Set<DNode> pred = cut[i].getAllPredecessors();
+				
+				for(DNode node : pred) 
+					if(node != cut[i] && !node.isEvent && node.pre!=null && node.post != null && node.pre.length > 0 && node.post.length > 0) {
+						DNode correctPost = null;
+						for(int k = 0; k < node.post.length; k++)
+							if(pred.contains(node.post[k])) {
+								correctPost = node.post[k];
+								break;
+							}
+						
+						relations.put(node.pre[0].id, correctPost.id);
+						
+						if(!indexesNodes.containsKey(node.pre[0]))
+							indexesNodes.put(node.pre[0], indexesNodes.size());
+						if(!indexesNodes.containsKey(correctPost))
+							indexesNodes.put(correctPost, indexesNodes.size());
+					}
+			}
+			
+			// relations are between ids, which may be shared by several events
+			int V = indexesNodes.size();
+			int words = (V + 63) >>> 6;
+			DNode[] nodes = indexesNodes.keySet().toArray(new DNode[V]);
+			Map<Short, long[]> nodesById = new HashMap<Short, long[]>();
+			for(int i = 0; i < V; i++) {
+				long[] sameId = nodesById.get(nodes[i].id);
+				if (sameId == null) {
+					sameId = new long[words];
+					nodesById.put(nodes[i].id, sameId);
+				}
+				sameId[i >>> 6] |= 1L << i;
+			}
+			long[][] reach = new long[V][words];
+			for(int i = 0; i < V; i++) {
+				reach[i][i >>> 6] |= 1L << i;
+				for(Short successor : relations.get(nodes[i].id)) {
+					long[] targets = nodesById.get(successor);
+					if (targets != null)
+						for(int w = 0; w < words; w++)
+							reach[i][w] |= targets[w];
+				}
+			}
+			
+			getTransitiveClosure(reach);
+			for(int i = 0; i < V; i++)
+				for(int j = 0; j < V; j++)
+					if((reach[i][j >>> 6] & (1L << j)) == 0 && (reach[j][i >>> 6] & (1L << i)) == 0)
+						relations.put(nodes[i].id, nodes[j].id);
+			
+			return relations;
+		}
 	}
 
-	private void printGraph(short[][] reach) {
-		System.out.println("-----------");
-		for (int i = 0; i < reach.length; i++){
-            for (int j = 0; j < reach.length; j++)
-                System.out.print(reach[i][j]+" ");
-            System.out.println();
-        }
-		System.out.println("-----------");
+	/**
+	 * Warshall's algorithm on rows of bits: row <tt>i</tt> gets all the nodes
+	 * reachable from <tt>k</tt> whenever it reaches <tt>k</tt>
+	 * 
+	 * @param reach
+	 *            the adjacency matrix, replaced by its transitive closure
+	 */
+	private static void getTransitiveClosure(long[][] reach) {
+		int V = reach.length;
+		for (int k = 0; k < V; k++) {
+			long[] rowK = reach[k];
+			for (int i = 0; i < V; i++) {
+				long[] rowI = reach[i];
+				if ((rowI[k >>> 6] & (1L << k)) != 0 && i != k)
+					for (int w = 0; w < rowI.length; w++)
+						rowI[w] |= rowK[w];
+			}
+		}
 	}
 
 	/**
@@ -459,26 +552,19 @@ public class BPstructBP extends DNodeBP {
 	}
 
 	public Set<DNode> getLocalConfig(DNode event) {
-		Stack<DNode> stack = new Stack<DNode>();
-		Set<DNode> visited = new HashSet<DNode>();
+		BitSet past = getCausalPast(event);
 		Set<DNode> events = new HashSet<DNode>();
-		stack.push(event);
-		while (!stack.isEmpty()) {
-			DNode curr = stack.pop();
-			visited.add(curr);
-			if (curr.isEvent)
-				events.add(curr);
-			if (curr.pre == null)
-				continue;
-			for (DNode p : curr.pre)
-				if (!visited.contains(p) && !stack.contains(p))
-					stack.push(p);
+		for (int i = past.nextSetBit(0); i >= 0; i = past.nextSetBit(i + 1)) {
+			DNode n = indexedNodes.get(i);
+			if (n.isEvent)
+				events.add(n);
 		}
 		return events;
 	}
 	
 	public LinkedHashSet<Pair<DNode, DNode>> getLocalDFS(DNode event) {
-		Stack<DNode> stack = new Stack<DNode>();
+		Deque<DNode> stack = new ArrayDeque<DNode>();
+		Set<DNode> onStack = new HashSet<DNode>();
 		Set<DNode> visited = new HashSet<DNode>();
 		Set<DNode> events = new HashSet<DNode>();
 		
@@ -486,8 +572,10 @@ public class BPstructBP extends DNodeBP {
 		
 		DNode target = event;
 		stack.push(event);
+		onStack.add(event);
 		while (!stack.isEmpty()) {
 			DNode curr = stack.pop();
+			onStack.remove(curr);
 			visited.add(curr);
 			
 			if(curr.isEvent)
@@ -499,18 +587,80 @@ public class BPstructBP extends DNodeBP {
 			}
 			
 			for (DNode p : curr.pre)
-				if (!visited.contains(p) && !stack.contains(p))
+				if (!visited.contains(p) && onStack.add(p))
 					stack.push(p);
 		}
 		
-		for(DNode n : events)
+		// concurrent events: neither is in the local configuration of the other.
+		// Indexing the past of the event indexes all of them, also the ones
+		// concurrent to the first visited
+		getCausalPast(event);
+		for(DNode n : events) {
+			BitSet past_n = getCausalPast(n);
+			int index_n = getNodeIndex(n);
 			for(DNode n1 : events)
-				if(n != n1 && !isCorrInLocalConfig(n, n1) && !isCorrInLocalConfig(n1, n))
+				if(n != n1 && !past_n.get(getNodeIndex(n1)) && !getCausalPast(n1).get(index_n))
 					pairsDF.add(new Pair<DNode, DNode>(n, n1));
+		}
 					
 		return pairsDF;
 	}
 	
+	/**
+	 * Returns the causal past of the given node, i.e., the node itself and
+	 * all its (transitive) predecessors, as a bitset over the indexes of
+	 * {@link #indexedNodes}. The predecessors of a node never change, so the
+	 * causal past of each node is computed once, as the union of the ones of
+	 * its direct predecessors.
+	 * 
+	 * @param node
+	 *            the node
+	 * @return the causal past, which must not be modified
+	 */
+	protected BitSet getCausalPast(DNode node) {
+		BitSet past = causalPast.get(node);
+		if (past != null)
+			return past;
+
+		// post-order visit of the predecessors which are not known yet
+		Deque<DNode> stack = new ArrayDeque<DNode>();
+		stack.push(node);
+		while (!stack.isEmpty()) {
+			DNode n = stack.peek();
+			if (causalPast.containsKey(n)) {
+				stack.pop();
+				continue;
+			}
+			boolean ready = true;
+			if (n.pre != null)
+				for (DNode p : n.pre)
+					if (!causalPast.containsKey(p)) {
+						stack.push(p);
+						ready = false;
+					}
+			if (ready) {
+				stack.pop();
+				BitSet b = new BitSet();
+				b.set(getNodeIndex(n));
+				if (n.pre != null)
+					for (DNode p : n.pre)
+						b.or(causalPast.get(p));
+				causalPast.put(n, b);
+			}
+		}
+		return causalPast.get(node);
+	}
+
+	private int getNodeIndex(DNode node) {
+		Integer index = nodeIndexes.get(node);
+		if (index == null) {
+			index = indexedNodes.size();
+			nodeIndexes.put(node, index);
+			indexedNodes.add(node);
+		}
+		return index;
+	}
+	
 	/**
 	 * Check whether cutoff or its corresponding event refer to a gateway node
 	 * in the originative net; false otherwise
@@ -580,30 +730,12 @@ public class BPstructBP extends DNodeBP {
 	 *         configuration of the cutoff; otherwise <code>false</code>
 	 */
 	protected boolean isCorrInLocalConfig(DNode cutoff, DNode corr) {
-		List<Integer> todo = new ArrayList<Integer>();
-		Map<Integer, DNode> i2d = new HashMap<Integer, DNode>();
-		for (DNode n : Arrays.asList(cutoff.pre)) {
-			todo.add(n.globalId);
-			i2d.put(n.globalId, n);
-		}
-		Set<Integer> visited = new HashSet<Integer>();
-
-		while (!todo.isEmpty()) {
-			Integer n = todo.remove(0);
-			visited.add(n);
-
-			if (n.equals(corr.globalId))
-				return true;
-
-			for (DNode m : i2d.get(n).pre) {
-				if (!visited.contains(m.globalId)) {
-					todo.add(m.globalId);
-					i2d.put(m.globalId, m);
-				}
-			}
-		}
-
-		return false;
+		if (cutoff == corr)
+			return false;
+		BitSet past = getCausalPast(cutoff);
+		// not indexed yet: 'corr' is not a predecessor of any known node
+		Integer index = nodeIndexes.get(corr);
+		return index != null && past.get(index);
 	}
 
 	public HashMap<DNode, Set<DNode>> getConcurrentConditions() {
@@ -38,6 +38,10 @@ import andbur.hub.top.uma.Options;
  * package This version provides access to the Unfolding and allows incremental
  * unfolding.
  * 
+ * Before unfolding, nodes of the net with empty or duplicated names are renamed
+ * in place (see {@link #getOriginalLabel(String)}), so each unfolder needs its
+ * own copy of the net.
+ * 
  * @author Luciano Garcia Banuelos, Artem Polyvyanyy
  */
 public class Unfolder_PetriNet {
@@ -136,15 +140,17 @@ public class Unfolder_PetriNet {
 
 	/**
 	 * Compute the unfolding of the net
+	 * 
+	 * @return the number of events added by the unfolding steps
 	 */
-	public void computeUnfolding() {
+	public int computeUnfolding() {
 		int total_steps = 0;
 		int current_steps = 0;
 		// extend unfolding until no more events can be added
 		while ((current_steps = bp.step()) > 0) {
 			total_steps += current_steps;
-			System.out.print(total_steps + "... ");
 		}
+		return total_steps;
 	}
 
     HashSet<Place> cutoffs = new HashSet<>();
@@ -318,6 +324,10 @@ public class Unfolder_PetriNet {
 				}else
 					steady.retainAll(n.getAllPredecessors());
 		
+		// a prefix of the unfolding may have no sink events
+		if (steady == null)
+			return new HashSet<DNode>();
+		
 		HashSet<DNode> toRemove = new HashSet<>();
 		for(DNode n : steady)
 			if(!n.isEvent)
@@ -339,6 +349,10 @@ public class Unfolder_PetriNet {
 				}else
 					steady.retainAll(n.getAllPredecessors());
 		
+		// a prefix of the unfolding may have no sink events
+		if (steady == null)
+			return new HashSet<DNode>();
+		
 		HashSet<DNode> toRemove = new HashSet<>();
 		for(DNode n : steady)
 			if(!n.isEvent || !visibleLabels.contains(sys.properNames[n.id]))
@@ -375,8 +389,6 @@ public class Unfolder_PetriNet {
 			if (n.isEvent)
 				continue;
 
-			System.out.println("Data about generator = " + n.id + " -- "+ n.idGenerator+ " -- "+ n.idGen + " -- ");
-			
 			// if (!option_printAnti && n.isAnti) continue;
 			
 			String name = n.toString();
@@ -1,43 +1,186 @@
 package beamline.miners.behavioalconformance;
 
-import java.io.IOException;
-import java.io.OutputStream;
-import java.io.PrintStream;
+import java.util.List;
 
 import org.processmining.models.graphbased.directed.petrinet.Petrinet;
 import org.processmining.models.semantics.petrinet.Marking;
 
 import beamline.events.BEvent;
+import beamline.miners.behavioalconformance.model.ConcurrentLocalConformanceTracker;
+import beamline.miners.behavioalconformance.model.ConformanceTracker;
 import beamline.miners.behavioalconformance.model.LocalConformanceTracker;
 import beamline.miners.behavioalconformance.model.LocalModelStructure;
+import beamline.miners.behavioalconformance.model.LocalModelStructureCache;
 import beamline.miners.behavioalconformance.model.OnlineConformanceScore;
+import beamline.miners.behavioalconformance.model.PreprocessingListener;
 import beamline.models.algorithms.StreamMiningAlgorithm;
 
 public class BehavioralConformance extends StreamMiningAlgorithm<OnlineConformanceScore> {
 
 	private static final long serialVersionUID = 6287730078016220573L;
-	private LocalConformanceTracker lct = null;
+	
+	/**
+	 * How the scores are returned by {@link BehavioralConformance#ingest(BEvent)}
+	 */
+	public enum ResultMode {
+		/**
+		 * The score owned by the process instance is returned, and it is updated by the following events of
+		 * the same instance
+		 */
+		SHARED,
+		/**
+		 * A new immutable score is returned for each event
+		 */
+		SNAPSHOT
+	}
+	
+	private ConformanceTracker lct = null;
+	private ResultMode resultMode = ResultMode.SHARED;
 	
 	public BehavioralConformance(Petrinet net, Marking marking, int maxCasesToStore) throws Exception {
 		this(net, marking, maxCasesToStore, true);
 	}
 	
 	public BehavioralConformance(Petrinet net, Marking marking, int maxCasesToStore, boolean quietPreProcessing) throws Exception {
-		System.out.println("Preprocessing started... ");
-		PrintStream oldSysout = System.out;
-		if (quietPreProcessing) {
-			System.setOut(new PrintStream(new OutputStream() { public void write(int arg0) throws IOException {} }));
+		this(net, marking, maxCasesToStore, quietPreProcessing, 1);
+	}
+	
+	/**
+	 * Creates a new conformance checker
+	 * 
+	 * @param net the reference model
+	 * @param marking the initial marking of the reference model
+	 * @param maxCasesToStore the maximum number of cases to keep in memory
+	 * @param quietPreProcessing whether the progress of the preprocessing should not be printed
+	 * @param concurrencyLevel the number of threads that will call {@link #ingest(BEvent)} concurrently,
+	 * with values larger than 1 the cases are stored in a {@link ConcurrentLocalConformanceTracker}
+	 * @throws Exception
+	 * @see LocalModelStructureCache#getDefault()
+	 */
+	public BehavioralConformance(Petrinet net, Marking marking, int maxCasesToStore, boolean quietPreProcessing, int concurrencyLevel) throws Exception {
+		this(net, marking, maxCasesToStore, quietPreProcessing ? PreprocessingListener.NONE : PreprocessingListener.printingTo(System.out), concurrencyLevel);
+	}
+	
+	/**
+	 * Creates a new conformance checker
+	 * 
+	 * @param net the reference model
+	 * @param marking the initial marking of the reference model
+	 * @param maxCasesToStore the maximum number of cases to keep in memory
+	 * @param listener the listener of the preprocessing, notified only if the model is not already in the
+	 * {@link LocalModelStructureCache#getDefault()} cache
+	 * @param concurrencyLevel the number of threads that will call {@link #ingest(BEvent)} concurrently,
+	 * with values larger than 1 the cases are stored in a {@link ConcurrentLocalConformanceTracker}
+	 * @throws Exception
+	 */
+	public BehavioralConformance(Petrinet net, Marking marking, int maxCasesToStore, PreprocessingListener listener, int concurrencyLevel) throws Exception {
+		LocalModelStructure lms = LocalModelStructureCache.getDefault().get(net, marking, listener);
+		if (concurrencyLevel > 1) {
+			this.lct = new ConcurrentLocalConformanceTracker(lms, maxCasesToStore, concurrencyLevel);
+		} else {
+			this.lct = new LocalConformanceTracker(lms, maxCasesToStore);
 		}
-		
-		LocalModelStructure lms = new LocalModelStructure(net, marking);
-		this.lct = new LocalConformanceTracker(lms, maxCasesToStore);
-		
-		System.setOut(oldSysout);
-		System.out.println("Preprocessing complete!");
+	}
+	
+	/**
+	 * Creates a new conformance checker on top of an already configured tracker, e.g., one with an idle
+	 * timeout for the cases
+	 * 
+	 * @param tracker the tracker of the process instances
+	 */
+	public BehavioralConformance(ConformanceTracker tracker) {
+		this.lct = tracker;
 	}
 	
 	@Override
 	public OnlineConformanceScore ingest(BEvent event) {
+		if (resultMode == ResultMode.SNAPSHOT) {
+			return lct.replayEvent(event, new OnlineConformanceScore()).freeze();
+		}
 		return lct.replayEvent(event);
 	}
+	
+	/**
+	 * Processes the event and writes the updated score into the given one, regardless of the result mode.
+	 * Reusing the same score for all the events processes the stream without allocating any result.
+	 * 
+	 * @param event the event to process
+	 * @param into the score to fill
+	 * @return <tt>into</tt>
+	 */
+	public OnlineConformanceScore ingest(BEvent event, OnlineConformanceScore into) {
+		return lct.replayEvent(event, into);
+	}
+	
+	/**
+	 * Processes a batch of events, in order, writing the scores of the process instance of the
+	 * <tt>i</tt>-th event into position <tt>i</tt> of the output arrays
+	 * 
+	 * @param events the events to process
+	 * @param conformance the output array of the conformance values
+	 * @param completeness the output array of the completeness values
+	 * @param confidence the output array of the confidence values
+	 */
+	public void ingestBatch(BEvent[] events, double[] conformance, double[] completeness, double[] confidence) {
+		lct.replayBatch(events, 0, events.length, conformance, completeness, confidence);
+	}
+	
+	/**
+	 * Processes a batch of events, in order, writing the scores of the process instance of the
+	 * <tt>i</tt>-th event into position <tt>i</tt> of the output arrays
+	 * 
+	 * @param events the events to process
+	 * @param conformance the output array of the conformance values
+	 * @param completeness the output array of the completeness values
+	 * @param confidence the output array of the confidence values
+	 */
+	public void ingestBatch(List<BEvent> events, double[] conformance, double[] completeness, double[] confidence) {
+		ingestBatch(events.toArray(new BEvent[events.size()]), conformance, completeness, confidence);
+	}
+	
+	/**
+	 * Processes a batch of events given in columnar form: the <tt>i</tt>-th event belongs to case
+	 * <tt>caseIds[i]</tt> and refers to the activity with id <tt>activityIds[i]</tt> (see
+	 * {@link #getActivityId(String)})
+	 * 
+	 * @param caseIds the case ids of the events
+	 * @param activityIds the activity ids of the events
+	 * @param length the number of events to process
+	 * @param conformance the output array of the conformance values
+	 * @param completeness the output array of the completeness values
+	 * @param confidence the output array of the confidence values
+	 */
+	public void ingestBatch(String[] caseIds, int[] activityIds, int length, double[] conformance, double[] completeness, double[] confidence) {
+		lct.replayBatch(caseIds, activityIds, 0, length, conformance, completeness, confidence);
+	}
+	
+	/**
+	 * Returns the id of the given activity, to be used for the columnar
+	 * {@link #ingestBatch(String[], int[], int, double[], double[], double[])}
+	 * 
+	 * @param activityName the activity name
+	 * @return the id of the activity, or {@link LocalModelStructure#UNKNOWN_ACTIVITY}
+	 */
+	public int getActivityId(String activityName) {
+		return lct.getModelStructure().getActivityId(activityName);
+	}
+	
+	/**
+	 * Returns whether the relations of the model are approximated, because its preprocessing exceeded
+	 * its budget. The completeness and the confidence of cases which repeat loops may then be inaccurate,
+	 * see {@link LocalModelStructure#isApproximated()}.
+	 * 
+	 * @return <tt>true</tt> if the relations of the model are approximated
+	 */
+	public boolean isApproximated() {
+		return lct.getModelStructure().isApproximated();
+	}
+	
+	public ResultMode getResultMode() {
+		return resultMode;
+	}
+	
+	public void setResultMode(ResultMode resultMode) {
+		this.resultMode = resultMode;
+	}
 }
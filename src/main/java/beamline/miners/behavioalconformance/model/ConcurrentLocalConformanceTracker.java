@@ -0,0 +1,186 @@
+package beamline.miners.behavioalconformance.model;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import beamline.events.BEvent;
+
+/**
+ * This class keeps track of the conformance status of a whole stream and can be used by several threads at
+ * the same time. Cases are sharded by the hash of their case id into independent stripes, each one being a
+ * {@link LocalConformanceTracker} with its own map and recency order and guarded by its own lock. Events of
+ * different stripes are therefore replayed in parallel, while events of the same case are always replayed
+ * one at a time, in the order in which the threads submit them (so callers must route all the events of a
+ * case through the same thread if the order matters).
+ * 
+ * <p>
+ * The global capacity is split among the stripes, so the total number of stored cases never exceeds
+ * <tt>maxCasesToStore</tt>. When a stripe is full, its least recently updated case is removed, which
+ * approximates a global least recently updated policy.
+ */
+public class ConcurrentLocalConformanceTracker implements ConformanceTracker {
+
+	private static final long serialVersionUID = 2861944950434931406L;
+	private static final int STRIPES_PER_THREAD = 4;
+
+	private LocalConformanceTracker[] stripes;
+	private int mask;
+
+	/**
+	 * Creates a new tracker
+	 * 
+	 * @param lms the local model structure
+	 * @param maxCasesToStore the maximum number of cases stored, over all stripes
+	 * @param concurrencyLevel the number of threads expected to replay events concurrently
+	 */
+	public ConcurrentLocalConformanceTracker(LocalModelStructure lms, int maxCasesToStore, int concurrencyLevel) {
+		this(lms, maxCasesToStore, concurrencyLevel, -1, null);
+	}
+	
+	/**
+	 * Creates a new tracker which also removes the cases that have not been updated for more than
+	 * <tt>idleTimeout</tt> milliseconds
+	 * 
+	 * @param lms the local model structure
+	 * @param maxCasesToStore the maximum number of cases stored, over all stripes
+	 * @param concurrencyLevel the number of threads expected to replay events concurrently
+	 * @param idleTimeout the inactivity time, in milliseconds, after which a case is removed, or a
+	 * negative value to disable the expiration of cases
+	 * @param timeReference the clock used to measure the inactivity
+	 */
+	public ConcurrentLocalConformanceTracker(LocalModelStructure lms, int maxCasesToStore, int concurrencyLevel, long idleTimeout, LocalConformanceTracker.TimeReference timeReference) {
+		// the number of stripes is a power of two, never larger than the number of cases to store
+		int stripesCount = 1;
+		while (stripesCount < concurrencyLevel * STRIPES_PER_THREAD && (stripesCount << 1) <= maxCasesToStore) {
+			stripesCount <<= 1;
+		}
+		
+		this.stripes = new LocalConformanceTracker[stripesCount];
+		this.mask = stripesCount - 1;
+		for (int i = 0; i < stripesCount; i++) {
+			int capacity = maxCasesToStore / stripesCount + (i < maxCasesToStore % stripesCount ? 1 : 0);
+			if (idleTimeout < 0) {
+				stripes[i] = new LocalConformanceTracker(lms, capacity);
+			} else {
+				stripes[i] = new LocalConformanceTracker(lms, capacity, idleTimeout, timeReference);
+			}
+		}
+	}
+	
+	@Override
+	public OnlineConformanceScore replayEvent(BEvent event) {
+		LocalConformanceTracker stripe = getStripe(event.getTraceName());
+		synchronized (stripe) {
+			return stripe.replayEvent(event);
+		}
+	}
+	
+	/**
+	 * Performs the replay of the event and fills the given score. Differently from
+	 * {@link #replayEvent(BEvent)}, the result cannot be changed by other threads replaying events of the
+	 * same case.
+	 */
+	@Override
+	public OnlineConformanceScore replayEvent(BEvent event, OnlineConformanceScore into) {
+		LocalConformanceTracker stripe = getStripe(event.getTraceName());
+		synchronized (stripe) {
+			return stripe.replayEvent(event, into);
+		}
+	}
+	
+	@Override
+	public void replayBatch(BEvent[] events, int offset, int length, double[] conformance, double[] completeness, double[] confidence) {
+		replayBatch(events, null, null, offset, length, conformance, completeness, confidence);
+	}
+	
+	@Override
+	public void replayBatch(String[] caseIds, int[] activityIds, int offset, int length, double[] conformance, double[] completeness, double[] confidence) {
+		replayBatch(null, caseIds, activityIds, offset, length, conformance, completeness, confidence);
+	}
+	
+	/*
+	 * The events are grouped by stripe, keeping their relative order, so that each stripe is locked once
+	 * per batch. The order of the events of each case is preserved, since a case belongs to one stripe.
+	 */
+	private void replayBatch(BEvent[] events, String[] caseIds, int[] activityIds, int offset, int length, double[] conformance, double[] completeness, double[] confidence) {
+		int[] stripeOf = new int[length];
+		int[] starts = new int[stripes.length + 1];
+		for (int k = 0; k < length; k++) {
+			String caseId = events != null ? events[offset + k].getTraceName() : caseIds[offset + k];
+			stripeOf[k] = getStripeIndex(caseId);
+			starts[stripeOf[k] + 1]++;
+		}
+		for (int s = 0; s < stripes.length; s++) {
+			starts[s + 1] += starts[s];
+		}
+		int[] positions = new int[length];
+		int[] next = Arrays.copyOf(starts, stripes.length);
+		for (int k = 0; k < length; k++) {
+			positions[next[stripeOf[k]]++] = offset + k;
+		}
+		
+		for (int s = 0; s < stripes.length; s++) {
+			if (starts[s] < starts[s + 1]) {
+				synchronized (stripes[s]) {
+					stripes[s].replayBatch(events, caseIds, activityIds, positions, starts[s], starts[s + 1], conformance, completeness, confidence);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Removes, from all stripes, the cases whose inactivity timeout expired before the given time
+	 * 
+	 * @param now the current time, in milliseconds
+	 * @see LocalConformanceTracker#expireCases(long)
+	 */
+	public void expireCases(long now) {
+		for (LocalConformanceTracker stripe : stripes) {
+			synchronized (stripe) {
+				stripe.expireCases(now);
+			}
+		}
+	}
+	
+	/**
+	 * Returns a snapshot of the process instances currently stored by the tracker
+	 */
+	public Set<String> getHandledCases() {
+		Set<String> cases = new HashSet<String>();
+		for (LocalConformanceTracker stripe : stripes) {
+			synchronized (stripe) {
+				cases.addAll(stripe.getHandledCases());
+			}
+		}
+		return cases;
+	}
+	
+	public int size() {
+		int size = 0;
+		for (LocalConformanceTracker stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+	
+	public int getStripesCount() {
+		return stripes.length;
+	}
+	
+	@Override
+	public LocalModelStructure getModelStructure() {
+		return stripes[0].getModelStructure();
+	}
+	
+	protected LocalConformanceTracker getStripe(String caseId) {
+		return stripes[getStripeIndex(caseId)];
+	}
+	
+	protected int getStripeIndex(String caseId) {
+		int hash = caseId.hashCode();
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+}
@@ -0,0 +1,69 @@
+package beamline.miners.behavioalconformance.model;
+
+import java.io.Serializable;
+
+import beamline.events.BEvent;
+
+/**
+ * Common interface of the classes keeping track of the conformance status of all the process instances of
+ * a stream.
+ */
+public interface ConformanceTracker extends Serializable {
+
+	/**
+	 * This method performs the replay of an event and keeps track of corresponding process instance.
+	 * 
+	 * @param event the event to replay
+	 * @return the updated score of the process instance of the event
+	 */
+	public OnlineConformanceScore replayEvent(BEvent event);
+	
+	/**
+	 * This method performs the replay of an event and writes the updated score of the corresponding
+	 * process instance into the given score, instead of returning a score owned by the tracker. Reusing
+	 * the same sink for all the events avoids any allocation, while a fresh sink for each event is never
+	 * changed by later replays.
+	 * 
+	 * @param event the event to replay
+	 * @param into the score to fill
+	 * @return <tt>into</tt>
+	 */
+	public OnlineConformanceScore replayEvent(BEvent event, OnlineConformanceScore into);
+	
+	/**
+	 * This method performs the replay of a batch of events, in order. The scores of the process instance
+	 * of <tt>events[i]</tt>, after its replay, are written at position <tt>i</tt> of the output arrays.
+	 * 
+	 * @param events the events to replay
+	 * @param offset the position of the first event to replay
+	 * @param length the number of events to replay
+	 * @param conformance the output array of the conformance values
+	 * @param completeness the output array of the completeness values
+	 * @param confidence the output array of the confidence values
+	 */
+	public void replayBatch(BEvent[] events, int offset, int length, double[] conformance, double[] completeness, double[] confidence);
+	
+	/**
+	 * This method performs the replay of a batch of events given in columnar form: the <tt>i</tt>-th event
+	 * belongs to case <tt>caseIds[i]</tt> and refers to activity <tt>activityIds[i]</tt>, as returned by
+	 * {@link LocalModelStructure#getActivityId(String)}. The scores are written as in
+	 * {@link #replayBatch(BEvent[], int, int, double[], double[], double[])}. Since these events carry no
+	 * timestamp, a tracker measuring inactivity on the event time uses the latest event time it has seen.
+	 * 
+	 * @param caseIds the case ids of the events
+	 * @param activityIds the activity ids of the events
+	 * @param offset the position of the first event to replay
+	 * @param length the number of events to replay
+	 * @param conformance the output array of the conformance values
+	 * @param completeness the output array of the completeness values
+	 * @param confidence the output array of the confidence values
+	 */
+	public void replayBatch(String[] caseIds, int[] activityIds, int offset, int length, double[] conformance, double[] completeness, double[] confidence);
+	
+	/**
+	 * Returns the local model structure the events are replayed against
+	 * 
+	 * @return the local model structure
+	 */
+	public LocalModelStructure getModelStructure();
+}
@@ -2,12 +2,9 @@ package beamline.miners.behavioalconformance.model;
 
 import java.io.Serializable;
 import java.util.Date;
-import java.util.HashSet;
-import java.util.Set;
-
-import org.apache.commons.lang3.tuple.Pair;
 
 import beamline.events.BEvent;
+import beamline.miners.behavioalconformance.utils.TimingWheel;
 
 /**
  * This class keeps track of the conformance status for a single process instance
@@ -17,85 +14,144 @@ import beamline.events.BEvent;
 public class LocalConformanceStatus implements Serializable {
 
 	private static final long serialVersionUID = -3488601130608912097L;
+
+	/**
+	 * Value of the last activity before the first event of the case is replayed
+	 */
+	protected static final int NO_ACTIVITY = -2;
+
 	protected int correctObservedDirectFollowingRelations = 0;
 	protected int incorrectObservedDirectFollowingRelations = 0;
-	protected String lastActivityForCase = null;
+	protected int lastActivityIdForCase = NO_ACTIVITY;
 	protected LocalModelStructure lms;
-	protected Date lastUpdate;
-	protected Set<DirectFollowingRelation> observedRelations = new HashSet<DirectFollowingRelation>();
+	protected long lastUpdate;
+	protected TimingWheel.Timer<String> expiryTimer = null;
+	protected ObservedRelationsSet observedRelations;
 	protected OnlineConformanceScore last = new OnlineConformanceScore();
-	
+
+	// current values of the scores
+	protected double conformance = 0d;
+	protected double completeness = 0d;
+	protected double confidence = 0d;
+	protected boolean lastObservedViolation = false;
+
 	public LocalConformanceStatus (LocalModelStructure lms) {
 		this.lms = lms;
-		this.lastUpdate = new Date();
+		this.lastUpdate = System.currentTimeMillis();
+		this.observedRelations = new ObservedRelationsSet(lms.getAllowedRelationsCount());
 	}
 	
 	/**
 	 * This method performs the replay of a single event
 	 * 
 	 * @param newEventName the event to replay
-	 * @return
+	 * @return the score of the case, which is updated by the following replays
 	 */
 	public OnlineConformanceScore replayEvent(BEvent event) {
-		String newEventName = event.getEventName();
-		if (lastActivityForCase != null) {
+		return replayEvent(event, last);
+	}
+	
+	/**
+	 * This method performs the replay of a single event and writes the updated score into the given one
+	 * 
+	 * @param event the event to replay
+	 * @param into the score to fill
+	 * @return <tt>into</tt>
+	 */
+	public OnlineConformanceScore replayEvent(BEvent event, OnlineConformanceScore into) {
+		replayActivity(lms.getActivityId(event.getEventName()));
+		
+		into.setConformance(conformance);
+		into.setCompleteness(completeness);
+		into.setConfidence(confidence);
+		into.isLastObservedViolation(lastObservedViolation);
+		into.setLastEvent(event);
+		return into;
+	}
+	
+	/**
+	 * This method performs the replay of a single activity, identified by its id in the local model
+	 * structure. Differently from {@link #replayEvent(BEvent)}, this method does not allocate any object:
+	 * the updated scores are available through the primitive getters of this class.
+	 * 
+	 * @param activityId the id of the activity, as returned by {@link LocalModelStructure#getActivityId(String)}
+	 */
+	public void replayActivity(int activityId) {
+		if (lastActivityIdForCase != NO_ACTIVITY) {
 			// this is not the first relation in the case
-			DirectFollowingRelation relation = new DirectFollowingRelation(lastActivityForCase, newEventName);
+			int relation = lms.getAllowedRelationIndex(lastActivityIdForCase, activityId);
 			
 			// count relations based on whether it is allowed or not
-			if (lms.isAllowed(relation)) {
-				if (!observedRelations.contains(relation)) {
+			if (relation >= 0) {
+				if (observedRelations.add(relation)) {
 					correctObservedDirectFollowingRelations++;
-					observedRelations.add(relation);
 				}
-				last.isLastObservedViolation(true);
+				lastObservedViolation = true;
 			} else {
 				incorrectObservedDirectFollowingRelations++;
-				last.isLastObservedViolation(false);
+				lastObservedViolation = false;
 			}
 			
 			// compute the conformance
-			last.setConformance((double) correctObservedDirectFollowingRelations /
-					(correctObservedDirectFollowingRelations + incorrectObservedDirectFollowingRelations));
+			conformance = (double) correctObservedDirectFollowingRelations /
+					(correctObservedDirectFollowingRelations + incorrectObservedDirectFollowingRelations);
 			
-			// compute the completeness
-			if (lms.isAllowed(relation)) {
-				Pair<Integer, Integer> minMax = lms.getMinMaxRelationsBefore(relation);
-				int observed = observedRelations.size();
-				if (observed >= minMax.getLeft() &&  observed <= minMax.getRight()) {
-					last.setCompleteness(1d);
-				} else {
-					double comp = observed / (minMax.getLeft() + 1d);
-					if (observed > (minMax.getLeft() + 1d)) {
-						comp = observed / (minMax.getRight() + 1d);
-					}
-					if (comp > 1) {
-						comp = 1;
-					}
-					last.setCompleteness(comp);
+			if (relation >= 0) {
+				// compute the completeness
+				double comp = lms.getCompleteness(relation, observedRelations.size());
+				if (!Double.isNaN(comp)) {
+					completeness = comp;
+				}
+				
+				// compute the confidence
+				double conf = lms.getConfidence(relation);
+				if (!Double.isNaN(conf)) {
+					confidence = conf;
 				}
-			}
-			
-			// compute the confidence
-			if (lms.isAllowed(relation)) {
-				last.setConfidence(1d - (lms.getMinRelationsAfter(relation) / lms.getMaxOfMinRelationsAfter()));
 			}
 		}
-		last.setLastEvent(event);
-		lastActivityForCase = newEventName;
+		lastActivityIdForCase = activityId;
 		refreshUpdateTime();
-		return last;
 	}
 	
 	public OnlineConformanceScore getCurrentScore() {
 		return last;
 	}
 	
+	public double getConformance() {
+		return conformance;
+	}
+	
+	public double getCompleteness() {
+		return completeness;
+	}
+	
+	public double getConfidence() {
+		return confidence;
+	}
+	
+	public boolean isLastObservedViolation() {
+		return lastObservedViolation;
+	}
+	
 	public void refreshUpdateTime() {
-		lastUpdate.setTime(System.currentTimeMillis());
+		refreshUpdateTime(System.currentTimeMillis());
+	}
+	
+	public void refreshUpdateTime(long time) {
+		lastUpdate = time;
 	}
 	
 	public Date getLastUpdate() {
+		return new Date(lastUpdate);
+	}
+	
+	/**
+	 * Returns the time of the last update of the case, in milliseconds
+	 * 
+	 * @return either the processing time or the event time of the last event, depending on the tracker
+	 */
+	public long getLastUpdateTime() {
 		return lastUpdate;
 	}
 }
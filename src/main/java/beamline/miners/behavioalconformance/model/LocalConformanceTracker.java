@@ -1,24 +1,47 @@
 package beamline.miners.behavioalconformance.model;
 
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 import beamline.events.BEvent;
+import beamline.miners.behavioalconformance.utils.TimingWheel;
 
 /**
  * This class keeps track of the conformance status of a whole stream, by dispatching the events based on their
  * process instance. Also it keeps track of the different cases and is in charge of removing old ones.
+ * The map is kept in access order, so the least recently updated case is always the eldest entry and can
+ * be evicted in constant time. Optionally, cases can also be removed after a period of inactivity: their
+ * expiration is tracked with a {@link TimingWheel}, so abandoned cases are released without scanning the
+ * stored ones.
  * 
  * @author Andrea Burattin
  */
-public class LocalConformanceTracker extends HashMap<String, LocalConformanceStatus> implements Serializable {
+public class LocalConformanceTracker extends LinkedHashMap<String, LocalConformanceStatus> implements ConformanceTracker {
 
 	private static final long serialVersionUID = -7453522111588238137L;
+	
+	/**
+	 * Time returned by {@link #getTime(BEvent)} when the time of the event is not known
+	 */
+	protected static final long UNKNOWN_TIME = Long.MIN_VALUE;
+
+	/**
+	 * The clock used to measure the inactivity of the cases
+	 */
+	public enum TimeReference {
+		/**
+		 * The timestamps of the events. Events without timestamp are considered to happen at the latest
+		 * time seen so far, and do not change the expiration of their case if no time has been seen yet.
+		 */
+		EVENT_TIME,
+		/**
+		 * The clock of the machine processing the events
+		 */
+		PROCESSING_TIME
+	}
 
-	protected Queue<String> caseIdHistory;
 	protected LocalModelStructure lms;
 
 	protected int maxCasesToStore;
@@ -26,12 +49,35 @@ public class LocalConformanceTracker extends HashMap<String, LocalConformanceSta
 	protected int costNoActivity;
 	protected int errorsToStore;
 
+	protected long idleTimeout = -1;
+	protected TimeReference timeReference = TimeReference.PROCESSING_TIME;
+	protected TimingWheel<String> expiryWheel = null;
+	protected CaseExpiration caseExpiration = new CaseExpiration();
+	protected long latestTime = UNKNOWN_TIME;
+
 	public LocalConformanceTracker(LocalModelStructure lms, int maxCasesToStore) {
-		this.caseIdHistory = new LinkedList<String>();
+		super(16, 0.75f, true);
 		this.lms = lms;
 		this.maxCasesToStore = maxCasesToStore;
 	}
 	
+	/**
+	 * Creates a tracker which, besides keeping at most <tt>maxCasesToStore</tt> cases, also removes the
+	 * cases that have not been updated for more than <tt>idleTimeout</tt> milliseconds
+	 * 
+	 * @param lms the local model structure
+	 * @param maxCasesToStore the maximum number of cases to store
+	 * @param idleTimeout the inactivity time, in milliseconds, after which a case is removed
+	 * @param timeReference the clock used to measure the inactivity
+	 */
+	public LocalConformanceTracker(LocalModelStructure lms, int maxCasesToStore, long idleTimeout, TimeReference timeReference) {
+		this(lms, maxCasesToStore);
+		this.idleTimeout = idleTimeout;
+		this.timeReference = timeReference;
+		// cases are removed at most 1/64 of the timeout after their expiration
+		this.expiryWheel = new TimingWheel<String>(Math.max(1, idleTimeout / TimingWheel.SLOTS));
+	}
+	
 	/**
 	 * This method performs the replay of an event and keeps track of corresponding process instance.
 	 * 
@@ -39,40 +85,207 @@ public class LocalConformanceTracker extends HashMap<String, LocalConformanceSta
 	 * @param newEventName
 	 * @return
 	 */
+	@Override
 	public OnlineConformanceScore replayEvent(BEvent event) {
+		return replay(event, null);
+	}
+	
+	@Override
+	public OnlineConformanceScore replayEvent(BEvent event, OnlineConformanceScore into) {
+		return replay(event, into);
+	}
+	
+	/**
+	 * Performs the replay of the event
+	 * 
+	 * @param event the event to replay
+	 * @param into the score to fill, or <tt>null</tt> to use the score owned by the case
+	 * @return the updated score
+	 */
+	protected OnlineConformanceScore replay(BEvent event, OnlineConformanceScore into) {
 		double time = System.nanoTime();
 		String caseId = event.getTraceName();
 		String newEventName = event.getEventName();
 		OnlineConformanceScore currentScore;
+		long now = UNKNOWN_TIME;
+		if (expiryWheel != null) {
+			// first release the cases that expired up to now
+			now = getTime(event);
+			if (now != UNKNOWN_TIME) {
+				expireCases(now);
+			}
+		}
 		
-		if (containsKey(caseId)) {
+		// the lookup also moves the case to the most recently updated position
+		LocalConformanceStatus lcs = get(caseId);
+		if (lcs != null) {
 			// now we can perform the replay
-			currentScore = get(caseId).replayEvent(event);
-			// need to refresh the cache
-			caseIdHistory.remove(caseId);
+			currentScore = into == null ? lcs.replayEvent(event) : lcs.replayEvent(event, into);
 		} else {
-			// check if we can store the new case
-			if (caseIdHistory.size() >= maxCasesToStore) {
-				// we have no room for the case, we need to remove the case id
-				// with most far update time
-				String toRemove = caseIdHistory.poll();
-				remove(toRemove);
-			}
-			// now we can perform the replay
-			LocalConformanceStatus lcs = new LocalConformanceStatus(lms);
-			currentScore = lcs.replayEvent(event);
+			// now we can perform the replay, if there is no room for the new case
+			// the one with most far update time is removed by removeEldestEntry
+			lcs = new LocalConformanceStatus(lms);
+			currentScore = into == null ? lcs.replayEvent(event) : lcs.replayEvent(event, into);
 			put(caseId, lcs);
 		}
-		// put the replayed case as first one
-		caseIdHistory.add(caseId);
+		
+		if (expiryWheel != null && now != UNKNOWN_TIME) {
+			postponeExpiration(caseId, lcs, now);
+		}
 		
 		// set the processing time
 		currentScore.setProcessingTime(System.nanoTime() - time);
 
 		return currentScore;
 	}
+	
+	@Override
+	public void replayBatch(BEvent[] events, int offset, int length, double[] conformance, double[] completeness, double[] confidence) {
+		replayBatch(events, null, null, null, offset, offset + length, conformance, completeness, confidence);
+	}
+	
+	@Override
+	public void replayBatch(String[] caseIds, int[] activityIds, int offset, int length, double[] conformance, double[] completeness, double[] confidence) {
+		replayBatch(null, caseIds, activityIds, null, offset, offset + length, conformance, completeness, confidence);
+	}
+	
+	/**
+	 * Performs the replay of a batch of events, given either as <tt>events</tt> or as <tt>caseIds</tt> and
+	 * <tt>activityIds</tt>. Consecutive events of the same case are replayed without looking the case up
+	 * again, and the processing time is read once per batch. With {@link TimeReference#EVENT_TIME}, the
+	 * columnar input has no timestamps, so its events happen at the latest time seen so far.
+	 * 
+	 * @param events the events, or <tt>null</tt> for columnar input
+	 * @param caseIds the case ids of the columnar input
+	 * @param activityIds the activity ids of the columnar input
+	 * @param positions the positions of the events to replay, or <tt>null</tt> to replay all positions
+	 * between <tt>from</tt> and <tt>to</tt>
+	 * @param from the first entry to replay (of <tt>positions</tt>, if given)
+	 * @param to the entry after the last one to replay
+	 * @param conformance the output array of the conformance values
+	 * @param completeness the output array of the completeness values
+	 * @param confidence the output array of the confidence values
+	 */
+	protected void replayBatch(BEvent[] events, String[] caseIds, int[] activityIds, int[] positions, int from, int to, double[] conformance, double[] completeness, double[] confidence) {
+		long processingTime = timeReference == TimeReference.PROCESSING_TIME ? System.currentTimeMillis() : UNKNOWN_TIME;
+		String previousCaseId = null;
+		LocalConformanceStatus lcs = null;
+		for (int k = from; k < to; k++) {
+			int i = positions == null ? k : positions[k];
+			String caseId;
+			int activityId;
+			long now = processingTime;
+			if (events != null) {
+				caseId = events[i].getTraceName();
+				activityId = lms.getActivityId(events[i].getEventName());
+				if (expiryWheel != null) {
+					now = getTime(events[i], processingTime);
+				}
+			} else {
+				caseId = caseIds[i];
+				activityId = activityIds[i];
+				if (timeReference == TimeReference.EVENT_TIME) {
+					now = latestTime;
+				}
+			}
+			
+			if (expiryWheel != null && now != UNKNOWN_TIME) {
+				expireCases(now);
+			}
+			
+			// the case of the previous event is already the most recently updated one
+			if (lcs == null || !caseId.equals(previousCaseId) || (lcs.expiryTimer != null && !lcs.expiryTimer.isScheduled())) {
+				lcs = get(caseId);
+				if (lcs == null) {
+					lcs = new LocalConformanceStatus(lms);
+					put(caseId, lcs);
+				}
+				previousCaseId = caseId;
+			}
+			lcs.replayActivity(activityId);
+			
+			if (expiryWheel != null && now != UNKNOWN_TIME) {
+				postponeExpiration(caseId, lcs, now);
+			}
+			
+			conformance[i] = lcs.getConformance();
+			completeness[i] = lcs.getCompleteness();
+			confidence[i] = lcs.getConfidence();
+		}
+	}
+	
+	private void postponeExpiration(String caseId, LocalConformanceStatus lcs, long now) {
+		lcs.refreshUpdateTime(now);
+		if (lcs.expiryTimer == null) {
+			lcs.expiryTimer = new TimingWheel.Timer<String>(caseId);
+		}
+		expiryWheel.schedule(lcs.expiryTimer, latestTime + idleTimeout);
+	}
 
+	/**
+	 * Removes all cases whose inactivity timeout expired before the given time. This method is invoked
+	 * automatically when events are replayed, but can also be called periodically to release the cases when
+	 * no events are received. It has no effect if the tracker has no idle timeout.
+	 * 
+	 * @param now the current time, in milliseconds, according to the time reference of the tracker
+	 */
+	public void expireCases(long now) {
+		if (expiryWheel != null) {
+			latestTime = Math.max(latestTime, now);
+			expiryWheel.advance(latestTime, caseExpiration);
+		}
+	}
+	
+	@Override
+	protected boolean removeEldestEntry(Map.Entry<String, LocalConformanceStatus> eldest) {
+		if (size() > maxCasesToStore) {
+			if (expiryWheel != null && eldest.getValue().expiryTimer != null) {
+				expiryWheel.cancel(eldest.getValue().expiryTimer);
+			}
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the time of the given event according to the time reference of the tracker. The two clocks
+	 * are never mixed: with {@link TimeReference#EVENT_TIME}, an event without timestamp gets the latest
+	 * time seen so far, not the processing time, so that it cannot expire all the idle cases at once.
+	 * 
+	 * @param event the event
+	 * @return the time, in milliseconds, or {@link #UNKNOWN_TIME} if the event has no timestamp and no
+	 * time has been seen yet
+	 */
+	protected long getTime(BEvent event) {
+		return getTime(event, timeReference == TimeReference.PROCESSING_TIME ? System.currentTimeMillis() : UNKNOWN_TIME);
+	}
+	
+	private long getTime(BEvent event, long processingTime) {
+		if (timeReference == TimeReference.PROCESSING_TIME) {
+			return processingTime;
+		}
+		return event.getEventTime() != null ? event.getEventTime().getTime() : latestTime;
+	}
+	
 	public Set<String> getHandledCases() {
 		return keySet();
 	}
+	
+	@Override
+	public LocalModelStructure getModelStructure() {
+		return lms;
+	}
+	
+	/**
+	 * Removes the cases whose timer expired
+	 */
+	protected class CaseExpiration implements TimingWheel.ExpirationHandler<String>, Serializable {
+
+		private static final long serialVersionUID = -1395418212767584916L;
+
+		@Override
+		public void expired(TimingWheel.Timer<String> timer) {
+			remove(timer.getValue());
+		}
+	}
 }
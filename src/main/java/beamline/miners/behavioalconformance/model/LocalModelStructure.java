@@ -2,6 +2,9 @@ package beamline.miners.behavioalconformance.model;
 
 import java.io.PrintStream;
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -9,19 +12,34 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.apache.commons.lang3.tuple.Pair;
-import org.processmining.models.graphbased.directed.analysis.ShortestPathFactory;
-import org.processmining.models.graphbased.directed.analysis.ShortestPathInfo;
 import org.processmining.models.graphbased.directed.petrinet.Petrinet;
 import org.processmining.models.graphbased.directed.transitionsystem.CoverabilityGraph;
 import org.processmining.models.graphbased.directed.transitionsystem.State;
 import org.processmining.models.graphbased.directed.transitionsystem.Transition;
+import org.processmining.models.semantics.petrinet.CTMarking;
 import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.unfolder.UnfoldingBudget;
+import org.processmining.unfolder.UnfoldingStatistics;
 
+import beamline.miners.behavioalconformance.model.PreprocessingListener.Phase;
 import beamline.miners.behavioalconformance.utils.CGHelper;
 import beamline.miners.behavioalconformance.utils.PetrinetHelper;
+import beamline.miners.behavioalconformance.utils.SafeReachabilityGraph;
+import beamline.miners.behavioalconformance.utils.ShortestPathTree;
+import beamline.miners.behavioalconformance.utils.StateSpaceBudget;
 import beamline.miners.behavioalconformance.utils.TSUtils;
+import beamline.miners.behavioalconformance.utils.TauClosure;
 
 /**
  * This class is a container of all structures needed for local online conformance checking.
@@ -31,12 +49,56 @@ import beamline.miners.behavioalconformance.utils.TSUtils;
 public class LocalModelStructure implements Serializable {
 
 	private static final long serialVersionUID = -7127507687303931081L;
+	
+	/**
+	 * Identifier returned for activities which are not part of the model
+	 */
+	public static final int UNKNOWN_ACTIVITY = -1;
+	/**
+	 * Value stored in the compiled tables for relations with no min/max information
+	 */
+	public static final int UNDEFINED = -1;
+	/**
+	 * Budget of each of the two unfoldings of the preprocessing, unless another one is given. Each
+	 * unfolding is measured from when it starts, so the time spent waiting for the unfoldings of other
+	 * models (or for the other unfolding of the same model) is not counted. Allocations are not limited,
+	 * since they include the garbage: the events bound the memory retained by the unfolding.
+	 */
+	public static final UnfoldingBudget DEFAULT_UNFOLDING_BUDGET = new UnfoldingBudget(100000, Long.MAX_VALUE, 1, TimeUnit.MINUTES);
+	/**
+	 * Budget of each of the three graphs of the preprocessing, unless another one is given
+	 */
+	public static final StateSpaceBudget DEFAULT_STATE_SPACE_BUDGET = new StateSpaceBudget(1000000, 10000000, 2, TimeUnit.MINUTES);
+	
+	private static final int PREPROCESSING_PIPELINES = 3;
+	private static final int SCORES_STRIDE = 3;
+	private static final int MIN_BEFORE = 0;
+	private static final int MAX_BEFORE = 1;
+	private static final int CONFIDENCE = 2;
+	
 	private Set<DirectFollowingRelation> allowedDirectFollowingRelations = new HashSet<>();
 	private Map<DirectFollowingRelation, Pair<Integer, Integer>> minMaxRelationsBefore = new HashMap<>();
 	private Map<DirectFollowingRelation, Integer> minRelationsAfter = new HashMap<>();
+	// whether the relations above still have to be derived from the compiled tables, which happens only
+	// when they are printed, since the replay reads the tables
+	private boolean relationsPending = false;
 	
-	// cached values
-	private Double maxOfMinRelationsAfter = null;
+	// compiled values: activities are interned to dense ids and relations are
+	// stored in flat tables indexed by [left * activities + right]
+	private Map<String, Integer> activityIds = new HashMap<>();
+	private String[] activityLabels = new String[0];
+	private long[] allowedRelationsMatrix = new long[0];
+	private int[] allowedRelationsIndex = new int[0];
+	private int allowedRelationsCount = 0;
+	private int[] minRelationsBeforeTable = new int[0];
+	private int[] maxRelationsBeforeTable = new int[0];
+	private int[] minRelationsAfterTable = new int[0];
+	private double maxOfMinRelationsAfter = Double.MIN_VALUE;
+	// for each allowed relation, the values needed by the replay are stored next to each other: the
+	// min and max relations before and the confidence, or NaN if not available
+	private double[] allowedRelationsScores = new double[0];
+	// whether any of the unfoldings exceeded its budget, so that its relations come from the folded net
+	private boolean approximated = false;
 
 	/**
 	 * Initializes the local model structure
@@ -47,7 +109,52 @@ public class LocalModelStructure implements Serializable {
 	 * @throws Exception
 	 */
 	public LocalModelStructure(Petrinet net, Marking initMarking) throws Exception {
-		populateStructure(net, initMarking);
+		this(net, initMarking, PreprocessingListener.NONE);
+	}
+	
+	/**
+	 * Initializes the local model structure, notifying the progress of the preprocessing
+	 * 
+	 * @param net
+	 * @param initMarking
+	 * @param listener the listener of the preprocessing
+	 * @throws Exception
+	 */
+	public LocalModelStructure(Petrinet net, Marking initMarking, PreprocessingListener listener) throws Exception {
+		this(net, initMarking, listener, DEFAULT_UNFOLDING_BUDGET);
+	}
+	
+	/**
+	 * Initializes the local model structure, notifying the progress of the preprocessing. Unfoldings
+	 * which exceed the given budget are not analyzed, since their prefix does not unroll all the loops
+	 * (see {@link #isApproximated()}): the relations they provide are approximated on the
+	 * net (or on its dual) instead, without unrolling its loops.
+	 * 
+	 * @param net
+	 * @param initMarking
+	 * @param listener the listener of the preprocessing
+	 * @param unfoldingBudget the budget of each unfolding
+	 * @throws Exception
+	 */
+	public LocalModelStructure(Petrinet net, Marking initMarking, PreprocessingListener listener, UnfoldingBudget unfoldingBudget) throws Exception {
+		this(net, initMarking, listener, unfoldingBudget, DEFAULT_STATE_SPACE_BUDGET);
+	}
+	
+	/**
+	 * Initializes the local model structure, notifying the progress of the preprocessing. Unfoldings
+	 * which exceed the given budget, or whose graphs exceed the given state space budget, are not
+	 * analyzed: the relations they provide are approximated on the net (or on its dual) instead.
+	 * 
+	 * @param net
+	 * @param initMarking
+	 * @param listener the listener of the preprocessing
+	 * @param unfoldingBudget the budget of each unfolding
+	 * @param stateSpaceBudget the budget of each reachability or coverability graph
+	 * @throws StateSpaceBudget.ExceededException if the graph of the net exceeds the state space budget
+	 * @throws Exception
+	 */
+	public LocalModelStructure(Petrinet net, Marking initMarking, PreprocessingListener listener, UnfoldingBudget unfoldingBudget, StateSpaceBudget stateSpaceBudget) throws Exception {
+		populateStructure(net, initMarking, listener, unfoldingBudget, stateSpaceBudget);
 	}
 	
 	/**
@@ -61,6 +168,43 @@ public class LocalModelStructure implements Serializable {
 		populateStructure(coverabilityGraph, coverabilityGraphUnfolded, coverabilityGraphDualUnfolded);
 	}
 	
+	/**
+	 * Initializes the local model structure from its compiled tables, indexed as
+	 * {@link #getRelationId(int, int)}, e.g., as stored by {@link LocalModelStructureFile}. The tables are
+	 * used as they are, not copied.
+	 * 
+	 * @param activityLabels the labels of the activities, sorted
+	 * @param allowedRelationsMatrix the bitmap of the allowed relations
+	 * @param minBefore the min relations before, or {@link #UNDEFINED}
+	 * @param maxBefore the max relations before, or {@link #UNDEFINED}
+	 * @param minAfter the min relations after, or {@link #UNDEFINED}
+	 * @param approximated whether the relations have been approximated, see {@link #isApproximated()}
+	 */
+	LocalModelStructure(String[] activityLabels, long[] allowedRelationsMatrix, int[] minBefore, int[] maxBefore, int[] minAfter, boolean approximated) {
+		this.approximated = approximated;
+		this.activityLabels = activityLabels;
+		this.allowedRelationsMatrix = allowedRelationsMatrix;
+		this.minRelationsBeforeTable = minBefore;
+		this.maxRelationsBeforeTable = maxBefore;
+		this.minRelationsAfterTable = minAfter;
+		for (int i = 0; i < activityLabels.length; i++) {
+			activityIds.put(activityLabels[i], i);
+		}
+		compileScores();
+		relationsPending = true;
+	}
+	
+	/**
+	 * Returns whether the min/max relations have been approximated, because an unfolding of the
+	 * preprocessing (or its graph) exceeded its budget and the net was analyzed without unrolling its
+	 * loops. Approximated structures are neither cached nor stored by {@link LocalModelStructureFile}.
+	 * 
+	 * @return <tt>true</tt> if the relations before or after are approximated
+	 */
+	public boolean isApproximated() {
+		return approximated;
+	}
+	
 	/**
 	 * This method checks if the given relation is allowed by the model or not
 	 * 
@@ -68,41 +212,280 @@ public class LocalModelStructure implements Serializable {
 	 * @return
 	 */
 	public boolean isAllowed(DirectFollowingRelation relation) {
-		return allowedDirectFollowingRelations.contains(relation);
+		return isAllowed(getActivityId(relation.getLeft()), getActivityId(relation.getRight()));
 	}
 	
 	public Pair<Integer, Integer> getMinMaxRelationsBefore(DirectFollowingRelation relation) {
-		return minMaxRelationsBefore.get(relation);
+		int relationId = getRelationId(getActivityId(relation.getLeft()), getActivityId(relation.getRight()));
+		if (relationId < 0 || minRelationsBeforeTable[relationId] == UNDEFINED) {
+			return null;
+		}
+		return Pair.of(minRelationsBeforeTable[relationId], maxRelationsBeforeTable[relationId]);
 	}
 	
 	public Integer getMinRelationsAfter(DirectFollowingRelation relation) {
-		return minRelationsAfter.get(relation);
+		int relationId = getRelationId(getActivityId(relation.getLeft()), getActivityId(relation.getRight()));
+		if (relationId < 0 || minRelationsAfterTable[relationId] == UNDEFINED) {
+			return null;
+		}
+		return minRelationsAfterTable[relationId];
 	}
 	
-	public Double getMaxOfMinRelationsAfter() {
-		if (maxOfMinRelationsAfter == null) {
-			maxOfMinRelationsAfter = Double.MIN_VALUE;
-			for (Integer v : minRelationsAfter.values()) {
-				maxOfMinRelationsAfter = Math.max(maxOfMinRelationsAfter, v);
+	public double getMaxOfMinRelationsAfter() {
+		return maxOfMinRelationsAfter;
+	}
+	
+	/**
+	 * Returns the dense identifier of the given activity
+	 * 
+	 * @param activity the activity label
+	 * @return the activity id, or {@link #UNKNOWN_ACTIVITY} if the activity is not in the model
+	 */
+	public int getActivityId(String activity) {
+		Integer id = activityIds.get(activity);
+		return id == null ? UNKNOWN_ACTIVITY : id;
+	}
+	
+	public String getActivityLabel(int activityId) {
+		return activityLabels[activityId];
+	}
+	
+	public int getActivitiesCount() {
+		return activityLabels.length;
+	}
+	
+	/**
+	 * Returns the identifier of the relation between the two given activities, which can be used as
+	 * index in the compiled tables
+	 * 
+	 * @param left the id of the first activity
+	 * @param right the id of the second activity
+	 * @return the relation id, or <tt>-1</tt> if any of the activities is unknown
+	 */
+	public int getRelationId(int left, int right) {
+		if (left < 0 || right < 0) {
+			return -1;
+		}
+		return left * activityLabels.length + right;
+	}
+	
+	public boolean isAllowed(int left, int right) {
+		int relationId = getRelationId(left, right);
+		return relationId >= 0 && (allowedRelationsMatrix[relationId >>> 6] & (1L << relationId)) != 0;
+	}
+	
+	/**
+	 * Returns the position of the given relation among the allowed ones. Allowed relations are numbered
+	 * densely, so the result can be used to index per-case structures sized on
+	 * {@link #getAllowedRelationsCount()}
+	 * 
+	 * @param left the id of the first activity
+	 * @param right the id of the second activity
+	 * @return the index of the relation, or <tt>-1</tt> if the relation is not allowed
+	 */
+	public int getAllowedRelationIndex(int left, int right) {
+		int relationId = getRelationId(left, right);
+		return relationId < 0 ? -1 : allowedRelationsIndex[relationId];
+	}
+	
+	public int getAllowedRelationsCount() {
+		return allowedRelationsCount;
+	}
+	
+	public int getMinRelationsBefore(int left, int right) {
+		int relationId = getRelationId(left, right);
+		return relationId < 0 ? UNDEFINED : minRelationsBeforeTable[relationId];
+	}
+	
+	public int getMaxRelationsBefore(int left, int right) {
+		int relationId = getRelationId(left, right);
+		return relationId < 0 ? UNDEFINED : maxRelationsBeforeTable[relationId];
+	}
+	
+	public int getMinRelationsAfter(int left, int right) {
+		int relationId = getRelationId(left, right);
+		return relationId < 0 ? UNDEFINED : minRelationsAfterTable[relationId];
+	}
+	
+	/**
+	 * Computes the completeness of a case which just observed the given allowed relation
+	 * 
+	 * @param allowedRelation the index of the relation, as returned by
+	 * {@link #getAllowedRelationIndex(int, int)}
+	 * @param observed the number of distinct allowed relations observed by the case so far
+	 * @return the completeness, or {@link Double#NaN} if the model has no min/max information on the relation
+	 */
+	public double getCompleteness(int allowedRelation, int observed) {
+		int base = allowedRelation * SCORES_STRIDE;
+		double minBefore = allowedRelationsScores[base + MIN_BEFORE];
+		double maxBefore = allowedRelationsScores[base + MAX_BEFORE];
+		if (Double.isNaN(minBefore)) {
+			return Double.NaN;
+		}
+		if (observed >= minBefore && observed <= maxBefore) {
+			return 1d;
+		}
+		double comp = observed / (minBefore + 1d);
+		if (observed > (minBefore + 1d)) {
+			comp = observed / (maxBefore + 1d);
+		}
+		if (comp > 1) {
+			comp = 1;
+		}
+		return comp;
+	}
+	
+	/**
+	 * Returns the confidence of a case which just observed the given allowed relation
+	 * 
+	 * @param allowedRelation the index of the relation, as returned by
+	 * {@link #getAllowedRelationIndex(int, int)}
+	 * @return the confidence, or {@link Double#NaN} if the model has no min information on the relation
+	 */
+	public double getConfidence(int allowedRelation) {
+		return allowedRelationsScores[allowedRelation * SCORES_STRIDE + CONFIDENCE];
+	}
+	
+	/**
+	 * Builds the three coverability graphs and analyzes them. The three pipelines (net, unfolded net and
+	 * unfolded dual net) are independent and populate different relations, so they are submitted to a
+	 * bounded executor, while each coverability graph is expanded on the common pool. The two unfoldings
+	 * are still computed one after the other, since the unfolder keeps static state (see
+	 * {@link org.processmining.unfolder.Unfolder}): only the graph of the net, the dual net, the graphs of
+	 * the unfoldings and their analyses overlap with an unfolding.
+	 * 
+	 * @param net the net
+	 * @param initMarking the initial marking
+	 * @param listener the listener of the preprocessing
+	 * @param unfoldingBudget the budget of each unfolding
+	 * @param stateSpaceBudget the budget of each graph
+	 * @throws Exception
+	 */
+	protected void populateStructure(Petrinet net, Marking initMarking, PreprocessingListener listener, UnfoldingBudget unfoldingBudget, StateSpaceBudget stateSpaceBudget) throws Exception {
+		listener.preprocessingStarted();
+		long start = System.nanoTime();
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		ExecutorService executor = Executors.newFixedThreadPool(PREPROCESSING_PIPELINES);
+		try {
+			// build coverability graph and allowed relations
+			Future<Void> relations = executor.submit(() -> {
+				analyze(net, initMarking, pool, stateSpaceBudget, listener, Phase.COVERABILITY_GRAPH, Phase.DIRECT_FOLLOWING_RELATIONS,
+						this::populateDirectFollowingRelations, this::populateDirectFollowingRelations);
+				return null;
+			});
+			
+			// build coverability graph of unfolded net and relations before
+			Future<Void> before = executor.submit(() -> {
+				UnfoldingStatistics statistics = new UnfoldingStatistics();
+				Pair<Petrinet, Marking> unfoldedTotal = measure(listener, Phase.UNFOLDING,
+						() -> PetrinetHelper.unfold(net, statistics, unfoldingBudget, s -> listener.unfoldingStep(Phase.UNFOLDING, s)));
+				listener.unfoldingBuilt(Phase.UNFOLDING, statistics);
+				if (statistics.isComplete()) {
+					try {
+						analyze(unfoldedTotal.getLeft(), unfoldedTotal.getRight(), pool, stateSpaceBudget, listener, Phase.COVERABILITY_GRAPH_UNFOLDED, Phase.MIN_MAX_RELATIONS_BEFORE,
+								this::populateMinMaxBefore, graph -> populateMinMaxBefore(graph, unfoldedTotal.getRight()));
+						return null;
+					} catch (StateSpaceBudget.ExceededException e) {
+						// the unfolding is too large to be explored, as if its budget ran out
+					}
+				}
+				approximated = true;
+				analyze(net, initMarking, pool, stateSpaceBudget, listener, Phase.COVERABILITY_GRAPH_UNFOLDED, Phase.MIN_MAX_RELATIONS_BEFORE,
+						this::populateMinMaxBefore, graph -> populateMinMaxBefore(graph, initMarking));
+				return null;
+			});
+			
+			// build coverability graph of dual net and relations after
+			Future<Void> after = executor.submit(() -> {
+				Pair<Petrinet, Marking> dualNet = measure(listener, Phase.DUAL_NET, () -> PetrinetHelper.computeDual(net));
+				UnfoldingStatistics statistics = new UnfoldingStatistics();
+				Pair<Petrinet, Marking> unfoldedDualNet = measure(listener, Phase.UNFOLDING_DUAL,
+						() -> PetrinetHelper.unfold(dualNet.getLeft(), statistics, unfoldingBudget, s -> listener.unfoldingStep(Phase.UNFOLDING_DUAL, s)));
+				listener.unfoldingBuilt(Phase.UNFOLDING_DUAL, statistics);
+				if (statistics.isComplete()) {
+					try {
+						analyze(unfoldedDualNet.getLeft(), unfoldedDualNet.getRight(), pool, stateSpaceBudget, listener, Phase.COVERABILITY_GRAPH_DUAL_UNFOLDED, Phase.MIN_RELATIONS_AFTER,
+								this::populateMinAfter, graph -> populateMinAfter(graph, unfoldedDualNet.getRight()));
+						return null;
+					} catch (StateSpaceBudget.ExceededException e) {
+						// the unfolding is too large to be explored, as if its budget ran out
+					}
+				}
+				approximated = true;
+				analyze(dualNet.getLeft(), dualNet.getRight(), pool, stateSpaceBudget, listener, Phase.COVERABILITY_GRAPH_DUAL_UNFOLDED, Phase.MIN_RELATIONS_AFTER,
+						this::populateMinAfter, graph -> populateMinAfter(graph, dualNet.getRight()));
+				return null;
+			});
+			
+			relations.get();
+			before.get();
+			after.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
 			}
+			throw e;
+		} finally {
+			executor.shutdownNow();
 		}
-		return maxOfMinRelationsAfter;
+		measure(listener, Phase.COMPILE, () -> {
+			compile();
+			return null;
+		});
+		listener.preprocessingCompleted(System.nanoTime() - start);
 	}
 	
-	protected void populateStructure(Petrinet net, Marking initMarking) throws Exception {
-		// build coverability graphs
-		CoverabilityGraph coverabilityGraph = CGHelper.generate(net, initMarking);
-		
-		// build coverability graph of unfolded net
-		Pair<Petrinet, Marking> unfoldedTotal = PetrinetHelper.unfold(net);
-		CoverabilityGraph coverabilityGraphUnfolded = CGHelper.generate(unfoldedTotal.getLeft(), unfoldedTotal.getRight());
-		
-		// build coverability graph of dual net
-		Pair<Petrinet, Marking> dualNet = PetrinetHelper.computeDual(net);
-		Pair<Petrinet, Marking> unfoldedDualNet = PetrinetHelper.unfold(dualNet.getLeft());
-		CoverabilityGraph coverabilityGraphDualUnfolded = CGHelper.generate(unfoldedDualNet.getLeft(), unfoldedDualNet.getRight());
-		
-		populateStructure(coverabilityGraph, coverabilityGraphUnfolded, coverabilityGraphDualUnfolded);
+	/*
+	 * Builds the graph of the given net and runs one of the analyses on it. Safe nets are explored as a
+	 * SafeReachabilityGraph, the others fall back to the coverability graph. Graphs exceeding the budget
+	 * are not analyzed, and the exception is propagated.
+	 */
+	private void analyze(Petrinet net, Marking marking, ForkJoinPool pool, StateSpaceBudget budget, PreprocessingListener listener, Phase graphPhase, Phase analysisPhase,
+			Consumer<SafeReachabilityGraph> safeAnalysis, Consumer<CoverabilityGraph> analysis) throws Exception {
+		Object graph = measure(listener, graphPhase, () -> {
+			SafeReachabilityGraph safeGraph = SafeReachabilityGraph.build(net, marking, budget);
+			return safeGraph != null ? safeGraph : CGHelper.generate(net, marking, pool, budget);
+		});
+		if (graph instanceof SafeReachabilityGraph) {
+			SafeReachabilityGraph safeGraph = (SafeReachabilityGraph) graph;
+			listener.coverabilityGraphBuilt(graphPhase, safeGraph.getStatesCount(), safeGraph.getEdgesCount());
+			measure(listener, analysisPhase, () -> {
+				safeAnalysis.accept(safeGraph);
+				return null;
+			});
+		} else {
+			CoverabilityGraph coverabilityGraph = (CoverabilityGraph) graph;
+			listener.coverabilityGraphBuilt(graphPhase, coverabilityGraph.getNodes().size(), coverabilityGraph.getEdges().size());
+			measure(listener, analysisPhase, () -> {
+				analysis.accept(coverabilityGraph);
+				return null;
+			});
+		}
+	}
+	
+	/*
+	 * Runs one step of the preprocessing, notifying the listener of its wall time and allocations
+	 */
+	private static <T> T measure(PreprocessingListener listener, Phase phase, Callable<T> step) throws Exception {
+		listener.phaseStarted(phase);
+		long allocated = getAllocatedBytes();
+		long start = System.nanoTime();
+		T result = step.call();
+		long wallTime = System.nanoTime() - start;
+		long allocatedAfter = getAllocatedBytes();
+		listener.phaseCompleted(phase, wallTime, allocated < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocated);
+		return result;
+	}
+	
+	private static long getAllocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
 	}
 	
 	protected void populateStructure(
@@ -113,13 +496,97 @@ public class LocalModelStructure implements Serializable {
 		populateDirectFollowingRelations(coverabilityGraph);
 		populateMinMaxBefore(coverabilityGraphUnfolded);
 		populateMinAfter(coverabilityGraphDualUnfolded);
+		compile();
+	}
+	
+	/**
+	 * Interns all activity labels to dense ids and moves the relations into flat primitive tables, so
+	 * that lookups during the replay do not need to hash any string
+	 */
+	protected void compile() {
+		populateRelationsFromTables();
+		Set<String> alphabet = new TreeSet<String>();
+		for (DirectFollowingRelation rel : allowedDirectFollowingRelations) {
+			alphabet.add(rel.getLeft());
+			alphabet.add(rel.getRight());
+		}
+		for (DirectFollowingRelation rel : minMaxRelationsBefore.keySet()) {
+			alphabet.add(rel.getLeft());
+			alphabet.add(rel.getRight());
+		}
+		for (DirectFollowingRelation rel : minRelationsAfter.keySet()) {
+			alphabet.add(rel.getLeft());
+			alphabet.add(rel.getRight());
+		}
+		
+		activityIds = new HashMap<>();
+		activityLabels = alphabet.toArray(new String[alphabet.size()]);
+		for (int i = 0; i < activityLabels.length; i++) {
+			activityIds.put(activityLabels[i], i);
+		}
+		
+		int relations = activityLabels.length * activityLabels.length;
+		allowedRelationsMatrix = new long[(relations + 63) >>> 6];
+		minRelationsBeforeTable = new int[relations];
+		maxRelationsBeforeTable = new int[relations];
+		minRelationsAfterTable = new int[relations];
+		Arrays.fill(minRelationsBeforeTable, UNDEFINED);
+		Arrays.fill(maxRelationsBeforeTable, UNDEFINED);
+		Arrays.fill(minRelationsAfterTable, UNDEFINED);
+		
+		for (DirectFollowingRelation rel : allowedDirectFollowingRelations) {
+			int relationId = getRelationId(activityIds.get(rel.getLeft()), activityIds.get(rel.getRight()));
+			allowedRelationsMatrix[relationId >>> 6] |= 1L << relationId;
+		}
+		for (Map.Entry<DirectFollowingRelation, Pair<Integer, Integer>> e : minMaxRelationsBefore.entrySet()) {
+			int relationId = getRelationId(activityIds.get(e.getKey().getLeft()), activityIds.get(e.getKey().getRight()));
+			minRelationsBeforeTable[relationId] = e.getValue().getLeft();
+			maxRelationsBeforeTable[relationId] = e.getValue().getRight();
+		}
+		for (Map.Entry<DirectFollowingRelation, Integer> e : minRelationsAfter.entrySet()) {
+			int relationId = getRelationId(activityIds.get(e.getKey().getLeft()), activityIds.get(e.getKey().getRight()));
+			minRelationsAfterTable[relationId] = e.getValue();
+		}
+		compileScores();
+	}
+	
+	/*
+	 * Numbers the allowed relations and precomputes their scores from the compiled tables
+	 */
+	private void compileScores() {
+		int relations = activityLabels.length * activityLabels.length;
+		allowedRelationsIndex = new int[relations];
+		allowedRelationsCount = 0;
+		maxOfMinRelationsAfter = Double.MIN_VALUE;
+		for (int relationId = 0; relationId < relations; relationId++) {
+			if ((allowedRelationsMatrix[relationId >>> 6] & (1L << relationId)) != 0) {
+				allowedRelationsIndex[relationId] = allowedRelationsCount++;
+			} else {
+				allowedRelationsIndex[relationId] = -1;
+			}
+			if (minRelationsAfterTable[relationId] != UNDEFINED) {
+				maxOfMinRelationsAfter = Math.max(maxOfMinRelationsAfter, minRelationsAfterTable[relationId]);
+			}
+		}
+		
+		allowedRelationsScores = new double[allowedRelationsCount * SCORES_STRIDE];
+		for (int relationId = 0; relationId < relations; relationId++) {
+			int index = allowedRelationsIndex[relationId];
+			if (index >= 0) {
+				int base = index * SCORES_STRIDE;
+				allowedRelationsScores[base + MIN_BEFORE] = minRelationsBeforeTable[relationId] == UNDEFINED ? Double.NaN : minRelationsBeforeTable[relationId];
+				allowedRelationsScores[base + MAX_BEFORE] = maxRelationsBeforeTable[relationId] == UNDEFINED ? Double.NaN : maxRelationsBeforeTable[relationId];
+				allowedRelationsScores[base + CONFIDENCE] = minRelationsAfterTable[relationId] == UNDEFINED ? Double.NaN : 1d - (minRelationsAfterTable[relationId] / maxOfMinRelationsAfter);
+			}
+		}
 	}
 	
 	protected void populateDirectFollowingRelations(CoverabilityGraph coverabilityGraph) {
 		// populate allowed direct following relations
+		TauClosure closure = new TauClosure(coverabilityGraph);
 		for (State s : coverabilityGraph.getNodes()) {
-			for (Transition first : TSUtils.getIncomingNonTau(s, new HashSet<Transition>())) {
-				for (Transition second : TSUtils.getOutgoingNonTau(s, new HashSet<Transition>())) {
+			for (Transition first : closure.getIncomingNonTau(s)) {
+				for (Transition second : closure.getOutgoingNonTau(s)) {
 					allowedDirectFollowingRelations.add(new DirectFollowingRelation(first.getLabel(), second.getLabel()));
 				}
 			}
@@ -127,28 +594,34 @@ public class LocalModelStructure implements Serializable {
 	}
 	
 	protected void populateMinMaxBefore(CoverabilityGraph coverabilityGraphUnfolded) {
-		ShortestPathInfo<State, Transition> shortestPathCalculatorUnfolded = ShortestPathFactory.calculateAllShortestDistanceDijkstra(coverabilityGraphUnfolded);
-		
+		populateMinMaxBefore(coverabilityGraphUnfolded, null);
+	}
+	
+	/**
+	 * Populates the min/max relations before from the graph of the unfolded net
+	 * 
+	 * @param coverabilityGraphUnfolded the graph
+	 * @param initMarking the marking of the initial state of the graph, used if all states have incoming
+	 * edges, or <tt>null</tt> if unknown
+	 */
+	protected void populateMinMaxBefore(CoverabilityGraph coverabilityGraphUnfolded, Marking initMarking) {
 		// populate min/max relations BEFORE from unfolded model
-		State startState = null;
-		for (Object s : coverabilityGraphUnfolded.getStates()) {
-			if (coverabilityGraphUnfolded.getInEdges(coverabilityGraphUnfolded.getNode(s)).isEmpty()) {
-				startState = coverabilityGraphUnfolded.getNode(s);
-				break;
-			}
-		}
+		State startState = getStartState(coverabilityGraphUnfolded, initMarking);
+		// all paths start from the start state, and transitions are not weighted
+		ShortestPathTree shortestPathsUnfolded = new ShortestPathTree(startState);
+		TauClosure closure = new TauClosure(coverabilityGraphUnfolded);
 		
 		for (State s : coverabilityGraphUnfolded.getNodes()) {
-			for (Transition first : TSUtils.getIncomingNonTau(s, new HashSet<Transition>())) {
-				for (Transition second : TSUtils.getOutgoingNonTau(s, new HashSet<Transition>())) {
-					String firstLabel = TSUtils.getTransitionLabel(first);
+			for (Transition first : closure.getIncomingNonTau(s)) {
+				String firstLabel = TSUtils.getTransitionLabel(first);
+				// the relations on the path to the target of the first transition, which is the same for all the second ones
+				int pathRelations = shortestPathsUnfolded.getPathRelationsCount(first.getTarget());
+				for (Transition second : closure.getOutgoingNonTau(s)) {
 					String secondLabel = TSUtils.getTransitionLabel(second);
 					
 					DirectFollowingRelation relation = new DirectFollowingRelation(firstLabel, secondLabel);
-					State targetState = first.getTarget();
-					List<DirectFollowingRelation> path = TSUtils.getShortestPath(shortestPathCalculatorUnfolded, startState, targetState);
-					Integer min = path.size();
-					Integer max = path.size();
+					Integer min = pathRelations;
+					Integer max = pathRelations;
 					if (minMaxRelationsBefore.containsKey(relation)) {
 						Pair<Integer, Integer> minMax = minMaxRelationsBefore.get(relation);
 						min = Math.min(min, minMax.getLeft());
@@ -161,28 +634,31 @@ public class LocalModelStructure implements Serializable {
 	}
 	
 	protected void populateMinAfter(CoverabilityGraph coverabilityGraphDualUnfolded) {
-		ShortestPathInfo<State, Transition> shortestPathCalculatorDualUnfolded = ShortestPathFactory.calculateAllShortestDistanceDijkstra(coverabilityGraphDualUnfolded);
-		
+		populateMinAfter(coverabilityGraphDualUnfolded, null);
+	}
+	
+	/**
+	 * Populates the min relations after from the graph of the unfolded dual net
+	 * 
+	 * @param coverabilityGraphDualUnfolded the graph
+	 * @param initMarking the marking of the initial state of the graph, used if all states have incoming
+	 * edges, or <tt>null</tt> if unknown
+	 */
+	protected void populateMinAfter(CoverabilityGraph coverabilityGraphDualUnfolded, Marking initMarking) {
 		// populate min/max relations AFTER the current one
-		State startStateDual = null; // start state on dual is end state on original
-		for (Object s : coverabilityGraphDualUnfolded.getStates()) {
-			if (coverabilityGraphDualUnfolded.getInEdges(coverabilityGraphDualUnfolded.getNode(s)).isEmpty()) {
-				startStateDual = coverabilityGraphDualUnfolded.getNode(s);
-				break;
-			}
-		}
+		State startStateDual = getStartState(coverabilityGraphDualUnfolded, initMarking); // start state on dual is end state on original
+		ShortestPathTree shortestPathsDualUnfolded = new ShortestPathTree(startStateDual);
+		TauClosure closure = new TauClosure(coverabilityGraphDualUnfolded);
 		
 		for (State s : coverabilityGraphDualUnfolded.getNodes()) {
 			if (!coverabilityGraphDualUnfolded.getInEdges(s).isEmpty() && !coverabilityGraphDualUnfolded.getOutEdges(s).isEmpty()) {
-				for (Transition first : TSUtils.getIncomingNonTau(s, new HashSet<Transition>())) {
-					for (Transition second : TSUtils.getOutgoingNonTau(s, new HashSet<Transition>())) {
-						String firstLabel = TSUtils.getTransitionLabel(first);
+				for (Transition first : closure.getIncomingNonTau(s)) {
+					String firstLabel = TSUtils.getTransitionLabel(first);
+					for (Transition second : closure.getOutgoingNonTau(s)) {
 						String secondLabel = TSUtils.getTransitionLabel(second);
 						
-						State targetState = second.getSource();
-						List<DirectFollowingRelation> path = TSUtils.getShortestPath(shortestPathCalculatorDualUnfolded, startStateDual, targetState);
 						DirectFollowingRelation relation = new DirectFollowingRelation(secondLabel, firstLabel);
-						Integer min = path.size();
+						Integer min = shortestPathsDualUnfolded.getPathRelationsCount(second.getSource());
 						if (minRelationsAfter.containsKey(relation)) {
 							min = Math.min(min, minRelationsAfter.get(relation));
 						}
@@ -193,12 +669,121 @@ public class LocalModelStructure implements Serializable {
 		}
 	}
 	
+	protected void populateDirectFollowingRelations(SafeReachabilityGraph graph) {
+		// populate allowed direct following relations
+		for (int s = 0; s < graph.getStatesCount(); s++) {
+			for (int first : graph.getIncomingNonTau(s)) {
+				for (int second : graph.getOutgoingNonTau(s)) {
+					allowedDirectFollowingRelations.add(new DirectFollowingRelation(graph.getLabel(first), graph.getLabel(second)));
+				}
+			}
+		}
+	}
+	
+	protected void populateMinMaxBefore(SafeReachabilityGraph graphUnfolded) {
+		// populate min/max relations BEFORE from unfolded model
+		int[] pathRelations = graphUnfolded.getPathRelationsCounts(graphUnfolded.getShortestPathTree(getStartState(graphUnfolded)));
+		
+		for (int s = 0; s < graphUnfolded.getStatesCount(); s++) {
+			for (int first : graphUnfolded.getIncomingNonTau(s)) {
+				String firstLabel = TSUtils.getTransitionLabel(graphUnfolded.getLabel(first));
+				for (int second : graphUnfolded.getOutgoingNonTau(s)) {
+					String secondLabel = TSUtils.getTransitionLabel(graphUnfolded.getLabel(second));
+					
+					DirectFollowingRelation relation = new DirectFollowingRelation(firstLabel, secondLabel);
+					Integer min = pathRelations[graphUnfolded.getTarget(first)];
+					Integer max = pathRelations[graphUnfolded.getTarget(first)];
+					if (minMaxRelationsBefore.containsKey(relation)) {
+						Pair<Integer, Integer> minMax = minMaxRelationsBefore.get(relation);
+						min = Math.min(min, minMax.getLeft());
+						max = Math.max(max, minMax.getRight());
+					}
+					minMaxRelationsBefore.put(relation, Pair.of(min, max));
+				}
+			}
+		}
+	}
+	
+	protected void populateMinAfter(SafeReachabilityGraph graphDualUnfolded) {
+		// populate min/max relations AFTER the current one
+		int[] pathRelations = graphDualUnfolded.getPathRelationsCounts(graphDualUnfolded.getShortestPathTree(getStartState(graphDualUnfolded)));
+		
+		for (int s = 0; s < graphDualUnfolded.getStatesCount(); s++) {
+			if (graphDualUnfolded.getInEdgesCount(s) > 0 && graphDualUnfolded.getOutEdgesEnd(s) > graphDualUnfolded.getOutEdgesStart(s)) {
+				for (int first : graphDualUnfolded.getIncomingNonTau(s)) {
+					String firstLabel = TSUtils.getTransitionLabel(graphDualUnfolded.getLabel(first));
+					for (int second : graphDualUnfolded.getOutgoingNonTau(s)) {
+						String secondLabel = TSUtils.getTransitionLabel(graphDualUnfolded.getLabel(second));
+						
+						DirectFollowingRelation relation = new DirectFollowingRelation(secondLabel, firstLabel);
+						Integer min = pathRelations[graphDualUnfolded.getSource(second)];
+						if (minRelationsAfter.containsKey(relation)) {
+							min = Math.min(min, minRelationsAfter.get(relation));
+						}
+						minRelationsAfter.put(relation, min);
+					}
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Returns the state with no incoming edges. If there is none, like in the graph of a net which is not
+	 * unfolded, the state of the initial marking is returned.
+	 */
+	private static State getStartState(CoverabilityGraph graph, Marking initMarking) {
+		for (Object s : graph.getStates()) {
+			if (graph.getInEdges(graph.getNode(s)).isEmpty()) {
+				return graph.getNode(s);
+			}
+		}
+		return initMarking == null ? null : graph.getNode(new CTMarking(initMarking));
+	}
+	
+	/*
+	 * Returns the state with no incoming edges, preferring the initial one. If there is none, like in the
+	 * graph of a net which is not unfolded, the initial state is returned.
+	 */
+	private static int getStartState(SafeReachabilityGraph graph) {
+		for (int s = 0; s < graph.getStatesCount(); s++) {
+			if (graph.getInEdgesCount(s) == 0) {
+				return s;
+			}
+		}
+		return graph.getStatesCount() > 0 ? 0 : -1;
+	}
+	
+	/*
+	 * Derives the relations from the compiled tables, if the structure has been initialized from them
+	 */
+	private synchronized void populateRelationsFromTables() {
+		if (!relationsPending) {
+			return;
+		}
+		int activities = activityLabels.length;
+		for (int relationId = 0; relationId < activities * activities; relationId++) {
+			DirectFollowingRelation relation = new DirectFollowingRelation(activityLabels[relationId / activities], activityLabels[relationId % activities]);
+			if ((allowedRelationsMatrix[relationId >>> 6] & (1L << relationId)) != 0) {
+				allowedDirectFollowingRelations.add(relation);
+			}
+			if (minRelationsBeforeTable[relationId] != UNDEFINED) {
+				minMaxRelationsBefore.put(relation, Pair.of(minRelationsBeforeTable[relationId], maxRelationsBeforeTable[relationId]));
+			}
+			if (minRelationsAfterTable[relationId] != UNDEFINED) {
+				minRelationsAfter.put(relation, minRelationsAfterTable[relationId]);
+			}
+		}
+		relationsPending = false;
+	}
+	
 	@Override
 	public String toString() {
+		populateRelationsFromTables();
 		return allowedDirectFollowingRelations.toString();
 	}
 	
 	public void printNicely(PrintStream out) {
+		populateRelationsFromTables();
 		List<String> alphabet = new LinkedList<String>();
 		for (DirectFollowingRelation rel : allowedDirectFollowingRelations) {
 			if (!alphabet.contains(rel.getLeft())) {
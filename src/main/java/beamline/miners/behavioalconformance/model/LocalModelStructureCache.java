@@ -0,0 +1,155 @@
+package beamline.miners.behavioalconformance.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.semantics.petrinet.Marking;
+
+/**
+ * Cache of built {@link LocalModelStructure}s, keyed by the fingerprint of the net and of its initial
+ * marking (see {@link LocalModelStructureFile#fingerprint(Petrinet, Marking)}), so that all conformance
+ * checkers of the same model share the same structure. The fingerprint is computed on the structure of
+ * the net, so two models share a structure only if they are isomorphic, regardless of how their places
+ * and transitions are labelled. The cache keeps at most a given number of
+ * structures, evicting the least recently used one. When several threads request the same model at the
+ * same time, the structure is built only once and all of them wait for it. Approximated structures (see
+ * {@link LocalModelStructure#isApproximated()}) are returned to the threads waiting for them, but are
+ * not kept: a later request builds the structure again.
+ */
+public class LocalModelStructureCache {
+
+	/**
+	 * The number of structures kept by the default cache
+	 */
+	public static final int DEFAULT_MAX_SIZE = 16;
+	private static final LocalModelStructureCache DEFAULT = new LocalModelStructureCache(DEFAULT_MAX_SIZE);
+
+	private final Map<String, FutureTask<LocalModelStructure>> structures;
+
+	/**
+	 * Creates a new cache
+	 * 
+	 * @param maxSize the maximum number of structures to keep
+	 */
+	public LocalModelStructureCache(int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("The cache must keep at least one structure");
+		}
+		this.structures = new LinkedHashMap<String, FutureTask<LocalModelStructure>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 4471532906163826812L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, FutureTask<LocalModelStructure>> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+	
+	/**
+	 * Returns the cache shared by the whole process
+	 * 
+	 * @return the cache
+	 */
+	public static LocalModelStructureCache getDefault() {
+		return DEFAULT;
+	}
+	
+	/**
+	 * Returns the structure of the given model, building it if it is not in the cache
+	 * 
+	 * @param net the net
+	 * @param marking the initial marking
+	 * @return the local model structure
+	 * @throws Exception if the structure could not be built
+	 */
+	public LocalModelStructure get(Petrinet net, Marking marking) throws Exception {
+		return get(net, marking, PreprocessingListener.NONE);
+	}
+	
+	/**
+	 * Returns the structure of the given model, building it if it is not in the cache
+	 * 
+	 * @param net the net
+	 * @param marking the initial marking
+	 * @param listener the listener of the preprocessing, notified only if the structure is built by this
+	 * call
+	 * @return the local model structure
+	 * @throws Exception if the structure could not be built
+	 */
+	public LocalModelStructure get(Petrinet net, Marking marking, PreprocessingListener listener) throws Exception {
+		String fingerprint = LocalModelStructureFile.fingerprint(net, marking);
+		FutureTask<LocalModelStructure> build;
+		boolean owner = false;
+		synchronized (structures) {
+			build = structures.get(fingerprint);
+			if (build == null) {
+				build = new FutureTask<LocalModelStructure>(() -> new LocalModelStructure(net, marking, listener));
+				structures.put(fingerprint, build);
+				owner = true;
+			}
+		}
+		
+		// the build runs on the thread that requested it first, outside of the lock
+		if (owner) {
+			build.run();
+		}
+		try {
+			LocalModelStructure lms = build.get();
+			if (lms.isApproximated()) {
+				// it may be complete with another budget or less contention on the unfolder
+				synchronized (structures) {
+					structures.remove(fingerprint, build);
+				}
+			}
+			return lms;
+		} catch (ExecutionException e) {
+			// failed builds are not cached, so they can be retried
+			synchronized (structures) {
+				structures.remove(fingerprint, build);
+			}
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw e;
+		}
+	}
+	
+	/**
+	 * Removes the structure of the given model from the cache
+	 * 
+	 * @param net the net
+	 * @param marking the initial marking
+	 */
+	public void invalidate(Petrinet net, Marking marking) {
+		String fingerprint = LocalModelStructureFile.fingerprint(net, marking);
+		synchronized (structures) {
+			structures.remove(fingerprint);
+		}
+	}
+	
+	/**
+	 * Removes all structures from the cache
+	 */
+	public void clear() {
+		synchronized (structures) {
+			structures.clear();
+		}
+	}
+	
+	/**
+	 * Returns the number of structures in the cache, including the ones being built
+	 * 
+	 * @return the number of structures
+	 */
+	public int size() {
+		synchronized (structures) {
+			return structures.size();
+		}
+	}
+}
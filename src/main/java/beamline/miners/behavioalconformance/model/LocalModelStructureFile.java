@@ -0,0 +1,454 @@
+package beamline.miners.behavioalconformance.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+import org.processmining.models.graphbased.directed.petrinet.elements.Arc;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.semantics.petrinet.Marking;
+
+/**
+ * Binary storage of a {@link LocalModelStructure}, so that the preprocessing of a model is done only
+ * once. The file contains only the compiled tables (the labels of the activities, the bitmap of the
+ * allowed relations and the min/max relations before and after) and is keyed by a fingerprint of the
+ * net and its initial marking:
+ * 
+ * <pre>
+ * int     magic number
+ * int     format version
+ * byte[]  fingerprint (SHA-256)
+ * int     flags: bit 0 is set if the structure is approximated
+ * int     number of activities (n)
+ * n x     int length + UTF-8 bytes of the label of the activity
+ * long[]  allowed relations bitmap, (n * n + 63) / 64 values
+ * int[]   min relations before, n * n values
+ * int[]   max relations before, n * n values
+ * int[]   min relations after, n * n values
+ * long    CRC32 of all previous bytes
+ * </pre>
+ * 
+ * All values are little-endian. Files are written atomically and read through a memory mapping.
+ * Structures approximated because an unfolding exceeded its budget (see
+ * {@link LocalModelStructure#isApproximated()}) are not stored by {@link #load(Petrinet, Marking, File)}.
+ */
+public class LocalModelStructureFile {
+
+	/**
+	 * The magic number at the beginning of every file ("LMS" followed by a zero byte)
+	 */
+	public static final int MAGIC = 0x00534D4C;
+	/**
+	 * The version of the format written by this class
+	 */
+	public static final int VERSION = 2;
+	private static final int FINGERPRINT_LENGTH = 32;
+	private static final int HEADER_LENGTH = 4 + 4 + FINGERPRINT_LENGTH + 4 + 4;
+	private static final int FLAG_APPROXIMATED = 1;
+
+	private LocalModelStructureFile() { }
+
+	/**
+	 * Loads the local model structure of the given net from the given file if it has been stored for the
+	 * same net and marking, otherwise builds it and stores it in the file for the next time, unless it is
+	 * approximated
+	 * 
+	 * @param net the net
+	 * @param marking the initial marking
+	 * @param file the file
+	 * @return the local model structure
+	 * @throws Exception
+	 */
+	public static LocalModelStructure load(Petrinet net, Marking marking, File file) throws Exception {
+		String fingerprint = fingerprint(net, marking);
+		if (file.isFile()) {
+			try {
+				return read(file, fingerprint);
+			} catch (IOException e) {
+				// stale or damaged file, it will be replaced
+			}
+		}
+		LocalModelStructure lms = new LocalModelStructure(net, marking);
+		if (!lms.isApproximated()) {
+			write(lms, fingerprint, file);
+		}
+		return lms;
+	}
+	
+	/**
+	 * Writes the local model structure into the given file. The file is first written next to the target
+	 * and then moved, so readers never see a partial file.
+	 * 
+	 * @param lms the local model structure
+	 * @param fingerprint the fingerprint of the net, as returned by {@link #fingerprint(Petrinet, Marking)}
+	 * @param file the target file
+	 * @throws IOException if the file cannot be written, or if the structure has too many activities to
+	 * fit in a file of at most 2 GB
+	 */
+	public static void write(LocalModelStructure lms, String fingerprint, File file) throws IOException {
+		int activities = lms.getActivitiesCount();
+		byte[][] labels = new byte[activities][];
+		long length = HEADER_LENGTH;
+		for (int i = 0; i < activities; i++) {
+			labels[i] = lms.getActivityLabel(i).getBytes(StandardCharsets.UTF_8);
+			length += 4 + labels[i].length;
+		}
+		length += getTablesLength(activities) + 8;
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("The structure has too many activities (" + activities + ") to be stored");
+		}
+		int relations = activities * activities;
+		
+		ByteBuffer buffer = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.put(parseFingerprint(fingerprint));
+		buffer.putInt(lms.isApproximated() ? FLAG_APPROXIMATED : 0);
+		buffer.putInt(activities);
+		for (byte[] label : labels) {
+			buffer.putInt(label.length);
+			buffer.put(label);
+		}
+		long[] allowed = new long[(relations + 63) >>> 6];
+		for (int left = 0; left < activities; left++) {
+			for (int right = 0; right < activities; right++) {
+				if (lms.isAllowed(left, right)) {
+					int relationId = lms.getRelationId(left, right);
+					allowed[relationId >>> 6] |= 1L << relationId;
+				}
+			}
+		}
+		for (long word : allowed) {
+			buffer.putLong(word);
+		}
+		for (int left = 0; left < activities; left++) {
+			for (int right = 0; right < activities; right++) {
+				buffer.putInt(lms.getMinRelationsBefore(left, right));
+			}
+		}
+		for (int left = 0; left < activities; left++) {
+			for (int right = 0; right < activities; right++) {
+				buffer.putInt(lms.getMaxRelationsBefore(left, right));
+			}
+		}
+		for (int left = 0; left < activities; left++) {
+			for (int right = 0; right < activities; right++) {
+				buffer.putInt(lms.getMinRelationsAfter(left, right));
+			}
+		}
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 0, buffer.position());
+		buffer.putLong(crc.getValue());
+		buffer.flip();
+		
+		File absolute = file.getAbsoluteFile();
+		File tmp = File.createTempFile(absolute.getName(), ".tmp", absolute.getParentFile());
+		try {
+			try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				channel.force(true);
+			}
+			Files.move(tmp.toPath(), absolute.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp.toPath());
+		}
+	}
+	
+	/*
+	 * Returns the bytes taken by the bitmap and the three tables of the given number of activities
+	 */
+	private static long getTablesLength(int activities) {
+		long relations = (long) activities * activities;
+		return 8 * ((relations + 63) >>> 6) + 3 * 4 * relations;
+	}
+	
+	/**
+	 * Reads a local model structure from the given file
+	 * 
+	 * @param file the file
+	 * @param fingerprint the expected fingerprint, or <tt>null</tt> to accept any net
+	 * @return the local model structure
+	 * @throws IOException if the file is damaged, has a different format version or was stored for a
+	 * different net
+	 */
+	public static LocalModelStructure read(File file, String fingerprint) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+		}
+		if (buffer.remaining() < HEADER_LENGTH + 8) {
+			throw new IOException("File " + file + " is too short");
+		}
+		
+		CRC32 crc = new CRC32();
+		ByteBuffer content = buffer.duplicate();
+		content.limit(buffer.limit() - 8);
+		crc.update(content);
+		if (crc.getValue() != buffer.getLong(buffer.limit() - 8)) {
+			throw new IOException("File " + file + " is damaged");
+		}
+		if (buffer.getInt() != MAGIC) {
+			throw new IOException("File " + file + " does not contain a local model structure");
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new IOException("File " + file + " has format version " + version + ", expected " + VERSION);
+		}
+		byte[] storedFingerprint = new byte[FINGERPRINT_LENGTH];
+		buffer.get(storedFingerprint);
+		if (fingerprint != null && !fingerprint.equals(toHex(storedFingerprint))) {
+			throw new IOException("File " + file + " refers to a different net");
+		}
+		
+		try {
+			boolean approximated = (buffer.getInt() & FLAG_APPROXIMATED) != 0;
+			int activities = buffer.getInt();
+			// each label takes at least 4 bytes, so larger counts cannot fit before the trailer
+			if (activities < 0 || 4L * activities + getTablesLength(activities) > buffer.remaining() - 8) {
+				throw new IOException("File " + file + " is malformed: invalid number of activities " + activities);
+			}
+			int relations = activities * activities;
+			String[] labels = new String[activities];
+			for (int i = 0; i < activities; i++) {
+				int labelLength = buffer.getInt();
+				if (labelLength < 0 || labelLength > buffer.remaining() - 8) {
+					throw new IOException("File " + file + " is malformed: invalid label length " + labelLength);
+				}
+				byte[] label = new byte[labelLength];
+				buffer.get(label);
+				labels[i] = new String(label, StandardCharsets.UTF_8);
+			}
+			if (buffer.remaining() - 8 != getTablesLength(activities)) {
+				throw new IOException("File " + file + " is malformed: unexpected length of the tables");
+			}
+			long[] allowed = new long[(relations + 63) >>> 6];
+			int[] minBefore = new int[relations];
+			int[] maxBefore = new int[relations];
+			int[] minAfter = new int[relations];
+			buffer.asLongBuffer().get(allowed);
+			buffer.position(buffer.position() + 8 * allowed.length);
+			buffer.asIntBuffer().get(minBefore);
+			buffer.position(buffer.position() + 4 * relations);
+			buffer.asIntBuffer().get(maxBefore);
+			buffer.position(buffer.position() + 4 * relations);
+			buffer.asIntBuffer().get(minAfter);
+			// the tables are used as they are, without rebuilding the relations
+			return new LocalModelStructure(labels, allowed, minBefore, maxBefore, minAfter, approximated);
+		} catch (RuntimeException e) {
+			throw new IOException("File " + file + " is malformed", e);
+		}
+	}
+	
+	/**
+	 * Computes a fingerprint of the given net and marking, which depends only on the structure of the net:
+	 * the labels of the nodes, the visibility of transitions, the arcs with their weights and the tokens
+	 * of the marking. Node identities and their iteration order do not matter.
+	 * 
+	 * <p>
+	 * Nodes are first numbered canonically: each node is colored with its label, and colors are refined
+	 * with the colors of the presets and postsets until they are stable (as in the Weisfeiler-Lehman test);
+	 * ties left are broken by singling out one node and refining again. The fingerprint is the hash of
+	 * every node with its full postset under this numbering, so nets with the same fingerprint are
+	 * isomorphic, even if several nodes share the same label. Isomorphic nets get the same fingerprint,
+	 * except for some highly regular nets where the choice of the node to single out matters: these are
+	 * just recomputed.
+	 * 
+	 * @param net the net
+	 * @param marking the initial marking
+	 * @return the fingerprint, as a hexadecimal string
+	 */
+	public static String fingerprint(Petrinet net, Marking marking) {
+		List<PetrinetNode> nodes = new ArrayList<PetrinetNode>(net.getPlaces().size() + net.getTransitions().size());
+		List<String> keys = new ArrayList<String>();
+		for (Place p : net.getPlaces()) {
+			nodes.add(p);
+			keys.add("p\u0000" + p.getLabel() + "\u0000" + marking.occurrences(p));
+		}
+		for (Transition t : net.getTransitions()) {
+			nodes.add(t);
+			keys.add((t.isInvisible() ? "i\u0000" : "t\u0000") + t.getLabel());
+		}
+		int n = nodes.size();
+		Map<PetrinetNode, Integer> indexes = new IdentityHashMap<PetrinetNode, Integer>(n);
+		for (int i = 0; i < n; i++) {
+			indexes.put(nodes.get(i), i);
+		}
+		
+		// arcs as (node, weight) pairs, on both sides
+		List<List<int[]>> pre = new ArrayList<List<int[]>>(n);
+		List<List<int[]>> post = new ArrayList<List<int[]>>(n);
+		for (int i = 0; i < n; i++) {
+			pre.add(new ArrayList<int[]>());
+			post.add(new ArrayList<int[]>());
+		}
+		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> e : net.getEdges()) {
+			int source = indexes.get(e.getSource());
+			int target = indexes.get(e.getTarget());
+			int weight = e instanceof Arc ? ((Arc) e).getWeight() : 1;
+			post.get(source).add(new int[] { target, weight });
+			pre.get(target).add(new int[] { source, weight });
+		}
+		
+		List<String> sortedKeys = new ArrayList<String>(new TreeSet<String>(keys));
+		int[] colors = new int[n];
+		for (int i = 0; i < n; i++) {
+			colors[i] = Collections.binarySearch(sortedKeys, keys.get(i));
+		}
+		int classes = refine(colors, sortedKeys.size(), pre, post);
+		while (classes < n) {
+			// single out the first node of the first class with more than one node
+			int[] sizes = new int[n];
+			for (int color : colors) {
+				sizes[color]++;
+			}
+			int tied = 0;
+			while (sizes[tied] < 2) {
+				tied++;
+			}
+			boolean chosen = false;
+			for (int i = 0; i < n; i++) {
+				if (colors[i] > tied || (colors[i] == tied && chosen)) {
+					colors[i]++;
+				} else if (colors[i] == tied) {
+					chosen = true;
+				}
+			}
+			classes = refine(colors, classes + 1, pre, post);
+		}
+		
+		int[] nodeAt = new int[n];
+		for (int i = 0; i < n; i++) {
+			nodeAt[colors[i]] = i;
+		}
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			ByteBuffer buffer = ByteBuffer.allocate(4);
+			digest.update(buffer.putInt(0, n).array());
+			for (int c = 0; c < n; c++) {
+				int node = nodeAt[c];
+				digest.update(keys.get(node).getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) '\n');
+				List<int[]> arcs = post.get(node);
+				int[][] targets = new int[arcs.size()][];
+				for (int a = 0; a < targets.length; a++) {
+					targets[a] = new int[] { colors[arcs.get(a)[0]], arcs.get(a)[1] };
+				}
+				Arrays.sort(targets, LocalModelStructureFile::compare);
+				digest.update(buffer.putInt(0, targets.length).array());
+				for (int[] target : targets) {
+					digest.update(buffer.putInt(0, target[0]).array());
+					digest.update(buffer.putInt(0, target[1]).array());
+				}
+			}
+			return toHex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/*
+	 * Refines the given coloring, with colors in [0, classes), until the number of classes stops growing.
+	 * New colors are ranks of the signatures, so they do not depend on the order of the nodes and the
+	 * refined coloring keeps the order of the original one.
+	 */
+	private static int refine(int[] colors, int classes, List<List<int[]>> pre, List<List<int[]>> post) {
+		int n = colors.length;
+		while (true) {
+			int[][] signatures = new int[n][];
+			for (int i = 0; i < n; i++) {
+				signatures[i] = signature(colors, i, pre.get(i), post.get(i));
+			}
+			Integer[] order = new Integer[n];
+			for (int i = 0; i < n; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> compare(signatures[a], signatures[b]));
+			int refined = 0;
+			for (int i = 0; i < n; i++) {
+				if (i > 0 && compare(signatures[order[i - 1]], signatures[order[i]]) != 0) {
+					refined++;
+				}
+				colors[order[i]] = refined;
+			}
+			refined = n == 0 ? 0 : refined + 1;
+			if (refined == classes) {
+				return classes;
+			}
+			classes = refined;
+		}
+	}
+	
+	private static int[] signature(int[] colors, int node, List<int[]> pre, List<int[]> post) {
+		int[] signature = new int[3 + 2 * (pre.size() + post.size())];
+		signature[0] = colors[node];
+		signature[1] = pre.size();
+		signature[2] = post.size();
+		int position = 3;
+		for (List<int[]> arcs : Arrays.asList(pre, post)) {
+			long[] neighbors = new long[arcs.size()];
+			for (int a = 0; a < neighbors.length; a++) {
+				neighbors[a] = ((long) colors[arcs.get(a)[0]] << 32) | (arcs.get(a)[1] & 0xFFFFFFFFL);
+			}
+			Arrays.sort(neighbors);
+			for (long neighbor : neighbors) {
+				signature[position++] = (int) (neighbor >>> 32);
+				signature[position++] = (int) neighbor;
+			}
+		}
+		return signature;
+	}
+	
+	private static int compare(int[] a, int[] b) {
+		int length = Math.min(a.length, b.length);
+		for (int i = 0; i < length; i++) {
+			if (a[i] != b[i]) {
+				return Integer.compare(a[i], b[i]);
+			}
+		}
+		return Integer.compare(a.length, b.length);
+	}
+	
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+	
+	private static byte[] parseFingerprint(String fingerprint) {
+		if (fingerprint == null || fingerprint.length() != FINGERPRINT_LENGTH * 2) {
+			throw new IllegalArgumentException("Invalid fingerprint " + fingerprint);
+		}
+		byte[] bytes = new byte[FINGERPRINT_LENGTH];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(fingerprint.substring(2 * i, 2 * i + 2), 16);
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,109 @@
+package beamline.miners.behavioalconformance.model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * This class keeps the set of allowed relations observed by a process instance. Relations are
+ * identified by their index among the allowed relations of the model (see
+ * {@link LocalModelStructure#getAllowedRelationIndex(int, int)}). For small models the set is a dense
+ * bitmap allocated once, for models with many allowed relations it becomes an open addressing hash set
+ * that only grows with the number of distinct relations observed.
+ */
+public class ObservedRelationsSet implements Serializable {
+
+	private static final long serialVersionUID = 4625263915574926307L;
+
+	/**
+	 * Maximum number of allowed relations for which a dense bitmap is used
+	 */
+	public static final int DENSE_LIMIT = 4096;
+	private static final int SPARSE_INITIAL_CAPACITY = 16;
+
+	private long[] bitmap = null;
+	private int[] table = null;
+	private int size = 0;
+
+	/**
+	 * Creates a new empty set
+	 * 
+	 * @param relations the number of allowed relations of the model
+	 */
+	public ObservedRelationsSet(int relations) {
+		if (relations <= DENSE_LIMIT) {
+			bitmap = new long[(relations + 63) >>> 6];
+		} else {
+			table = new int[SPARSE_INITIAL_CAPACITY];
+		}
+	}
+	
+	/**
+	 * Adds the given relation to the set
+	 * 
+	 * @param relation the index of the relation
+	 * @return <tt>true</tt> if the relation was not already in the set
+	 */
+	public boolean add(int relation) {
+		if (bitmap != null) {
+			long mask = 1L << relation;
+			if ((bitmap[relation >>> 6] & mask) != 0) {
+				return false;
+			}
+			bitmap[relation >>> 6] |= mask;
+			size++;
+			return true;
+		}
+		
+		// values are stored shifted by one, so that 0 marks an empty slot
+		int slot = find(table, relation);
+		if (table[slot] != 0) {
+			return false;
+		}
+		table[slot] = relation + 1;
+		size++;
+		if (size << 1 > table.length) {
+			rehash();
+		}
+		return true;
+	}
+	
+	public boolean contains(int relation) {
+		if (bitmap != null) {
+			return (bitmap[relation >>> 6] & (1L << relation)) != 0;
+		}
+		return table[find(table, relation)] != 0;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public void clear() {
+		if (bitmap != null) {
+			Arrays.fill(bitmap, 0);
+		} else {
+			Arrays.fill(table, 0);
+		}
+		size = 0;
+	}
+	
+	private void rehash() {
+		int[] newTable = new int[table.length << 1];
+		for (int value : table) {
+			if (value != 0) {
+				newTable[find(newTable, value - 1)] = value;
+			}
+		}
+		table = newTable;
+	}
+	
+	private static int find(int[] table, int relation) {
+		int mask = table.length - 1;
+		int hash = relation * 0x9E3779B9;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (table[slot] != 0 && table[slot] != relation + 1) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+}
@@ -0,0 +1,592 @@
+package beamline.miners.behavioalconformance.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+import beamline.events.BEvent;
+
+/**
+ * This class keeps track of the conformance status of a whole stream, storing the status of the process
+ * instances outside of the Java heap. Each case is a fixed-width record (counters, last activity, scores,
+ * last update time and a bitmap of the observed allowed relations) in chunks of direct, or memory-mapped,
+ * memory, so that tens of millions of cases can be stored without objects for the garbage collector to
+ * trace. Records are found through an open addressing index, also off-heap, keyed by a 64 bit hash of the
+ * case id, and are linked in recency order to remove the least recently updated case when the store is
+ * full.
+ * 
+ * <p>
+ * Case ids are not stored, only their hashes: two case ids with the same 64 bit hash are treated as the
+ * same case, and the stored cases can only be queried with {@link #containsCase(String)}. The score
+ * returned by {@link #replayEvent(BEvent)} is owned by the tracker and is overwritten by the following
+ * call. The off-heap memory is released by {@link #close()}, without waiting for the garbage collector.
+ * This class is not thread safe.
+ * 
+ * <p>
+ * Each file can be mapped by only one open tracker in the JVM, since the tracker owns its content. The
+ * stored cases are serialized with the tracker, in recency order. A deserialized copy of a tracker which
+ * maps a file maps a new file in the same directory, deleted when the JVM exits, so that the copy never
+ * overwrites the cases of the original one.
+ */
+public class OffHeapConformanceTracker implements ConformanceTracker, AutoCloseable {
+
+	private static final long serialVersionUID = -6315470592231651850L;
+	private static final int NIL = -1;
+	private static final int MAX_CHUNK_BYTES = 1 << 30;
+	private static final int MAX_INDEX_SIZE = 1 << 27;
+
+	// layout of a record, in bytes
+	private static final int HASH = 0;
+	private static final int PREV = 8;
+	private static final int NEXT = 12;
+	private static final int CORRECT = 16;
+	private static final int INCORRECT = 20;
+	private static final int LAST_ACTIVITY = 24;
+	private static final int FLAGS = 28;
+	private static final int LAST_UPDATE = 32;
+	private static final int CONFORMANCE = 40;
+	private static final int COMPLETENESS = 48;
+	private static final int CONFIDENCE = 56;
+	private static final int BITMAP = 64;
+	private static final int FLAG_LAST_OBSERVED_VIOLATION = 1;
+	// the files mapped by the open trackers
+	private static final Set<File> MAPPED_FILES = new HashSet<File>();
+
+	private LocalModelStructure lms;
+	private int maxCasesToStore;
+	private File file;
+	private int bitmapWords;
+	private int recordSize;
+	private int chunkBits;
+	private int chunkMask;
+	private int indexMask;
+
+	private transient ByteBuffer[] chunks;
+	private transient ByteBuffer indexKeys;
+	private transient ByteBuffer indexSlots;
+	private transient int size;
+	private transient int head;
+	private transient int tail;
+	private transient OnlineConformanceScore score;
+
+	/**
+	 * Creates a new tracker storing the cases in direct memory
+	 * 
+	 * @param lms the local model structure
+	 * @param maxCasesToStore the maximum number of cases stored
+	 */
+	public OffHeapConformanceTracker(LocalModelStructure lms, int maxCasesToStore) {
+		this(lms, maxCasesToStore, null);
+	}
+	
+	/**
+	 * Creates a new tracker storing the cases in a memory-mapped file
+	 * 
+	 * @param lms the local model structure
+	 * @param maxCasesToStore the maximum number of cases stored
+	 * @param file the file to map, or <tt>null</tt> to use direct memory. Its content is overwritten.
+	 * @throws IllegalArgumentException if the file is already mapped by another open tracker
+	 */
+	public OffHeapConformanceTracker(LocalModelStructure lms, int maxCasesToStore, File file) {
+		if (maxCasesToStore <= 0) {
+			throw new IllegalArgumentException("The number of cases to store must be positive");
+		}
+		int indexSize = Integer.highestOneBit(Math.max(2, maxCasesToStore + (maxCasesToStore >>> 1))) << 1;
+		if (indexSize <= 0 || indexSize > MAX_INDEX_SIZE) {
+			throw new IllegalArgumentException("Too many cases to store: " + maxCasesToStore);
+		}
+		
+		this.lms = lms;
+		this.maxCasesToStore = maxCasesToStore;
+		this.file = file;
+		this.bitmapWords = (lms.getAllowedRelationsCount() + 63) >>> 6;
+		this.recordSize = BITMAP + (bitmapWords << 3);
+		this.chunkBits = 31 - Integer.numberOfLeadingZeros(MAX_CHUNK_BYTES / recordSize);
+		this.chunkMask = (1 << chunkBits) - 1;
+		this.indexMask = indexSize - 1;
+		allocate();
+	}
+	
+	/*
+	 * Marks the file as mapped by this tracker, see #unregisterFile()
+	 */
+	private static void registerFile(File file) {
+		synchronized (MAPPED_FILES) {
+			if (!MAPPED_FILES.add(file.getAbsoluteFile().toPath().normalize().toFile())) {
+				throw new IllegalArgumentException("File " + file + " is already mapped by another tracker");
+			}
+		}
+	}
+	
+	private void unregisterFile() {
+		if (file != null) {
+			synchronized (MAPPED_FILES) {
+				MAPPED_FILES.remove(file.getAbsoluteFile().toPath().normalize().toFile());
+			}
+		}
+	}
+	
+	@Override
+	public OnlineConformanceScore replayEvent(BEvent event) {
+		return replayEvent(event, score);
+	}
+	
+	@Override
+	public OnlineConformanceScore replayEvent(BEvent event, OnlineConformanceScore into) {
+		checkOpen();
+		double time = System.nanoTime();
+		long hash = hash(event.getTraceName());
+		int activityId = lms.getActivityId(event.getEventName());
+		
+		int slot = lookup(hash);
+		if (slot == NIL) {
+			slot = newCase(hash);
+		} else {
+			moveToTail(slot);
+		}
+		replay(slot, activityId);
+		
+		ByteBuffer chunk = chunks[slot >>> chunkBits];
+		int offset = (slot & chunkMask) * recordSize;
+		into.setConformance(chunk.getDouble(offset + CONFORMANCE));
+		into.setCompleteness(chunk.getDouble(offset + COMPLETENESS));
+		into.setConfidence(chunk.getDouble(offset + CONFIDENCE));
+		into.isLastObservedViolation((chunk.getInt(offset + FLAGS) & FLAG_LAST_OBSERVED_VIOLATION) != 0);
+		into.setLastEvent(event);
+		into.setProcessingTime(System.nanoTime() - time);
+		return into;
+	}
+	
+	@Override
+	public void replayBatch(BEvent[] events, int offset, int length, double[] conformance, double[] completeness, double[] confidence) {
+		replayBatch(events, null, null, offset, length, conformance, completeness, confidence);
+	}
+	
+	@Override
+	public void replayBatch(String[] caseIds, int[] activityIds, int offset, int length, double[] conformance, double[] completeness, double[] confidence) {
+		replayBatch(null, caseIds, activityIds, offset, length, conformance, completeness, confidence);
+	}
+	
+	private void replayBatch(BEvent[] events, String[] caseIds, int[] activityIds, int offset, int length, double[] conformance, double[] completeness, double[] confidence) {
+		checkOpen();
+		String previousCaseId = null;
+		int slot = NIL;
+		for (int i = offset; i < offset + length; i++) {
+			String caseId = events != null ? events[i].getTraceName() : caseIds[i];
+			int activityId = events != null ? lms.getActivityId(events[i].getEventName()) : activityIds[i];
+			
+			// the case of the previous event is already the most recently updated one
+			if (slot == NIL || !caseId.equals(previousCaseId)) {
+				long hash = hash(caseId);
+				slot = lookup(hash);
+				if (slot == NIL) {
+					slot = newCase(hash);
+				} else {
+					moveToTail(slot);
+				}
+				previousCaseId = caseId;
+			}
+			replay(slot, activityId);
+			
+			ByteBuffer chunk = chunks[slot >>> chunkBits];
+			int recordOffset = (slot & chunkMask) * recordSize;
+			conformance[i] = chunk.getDouble(recordOffset + CONFORMANCE);
+			completeness[i] = chunk.getDouble(recordOffset + COMPLETENESS);
+			confidence[i] = chunk.getDouble(recordOffset + CONFIDENCE);
+		}
+	}
+	
+	@Override
+	public LocalModelStructure getModelStructure() {
+		return lms;
+	}
+	
+	/**
+	 * Checks whether the given case is currently stored
+	 * 
+	 * @param caseId the case id
+	 * @return <tt>true</tt> if the case is stored
+	 */
+	public boolean containsCase(String caseId) {
+		checkOpen();
+		return lookup(hash(caseId)) != NIL;
+	}
+	
+	/**
+	 * Returns the number of cases currently stored
+	 * 
+	 * @return the number of cases
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Releases the memory storing the cases. Mapped files are unmapped, but not deleted. The tracker can
+	 * not be used anymore after it is closed.
+	 */
+	@Override
+	public void close() {
+		if (chunks == null) {
+			return;
+		}
+		ByteBuffer[] buffers = chunks;
+		chunks = null;
+		for (ByteBuffer chunk : buffers) {
+			release(chunk);
+		}
+		release(indexKeys);
+		release(indexSlots);
+		indexKeys = null;
+		indexSlots = null;
+		size = 0;
+		head = NIL;
+		tail = NIL;
+		unregisterFile();
+	}
+	
+	private void checkOpen() {
+		if (chunks == null) {
+			throw new IllegalStateException("The tracker is closed");
+		}
+	}
+	
+	/*
+	 * Same computation of LocalConformanceStatus#replayActivity(int), on a record
+	 */
+	private void replay(int slot, int activityId) {
+		ByteBuffer chunk = chunks[slot >>> chunkBits];
+		int offset = (slot & chunkMask) * recordSize;
+		int lastActivityId = chunk.getInt(offset + LAST_ACTIVITY);
+		if (lastActivityId != LocalConformanceStatus.NO_ACTIVITY) {
+			int relation = lms.getAllowedRelationIndex(lastActivityId, activityId);
+			int correct = chunk.getInt(offset + CORRECT);
+			int incorrect = chunk.getInt(offset + INCORRECT);
+			
+			if (relation >= 0) {
+				int word = offset + BITMAP + ((relation >>> 6) << 3);
+				long bits = chunk.getLong(word);
+				long mask = 1L << relation;
+				if ((bits & mask) == 0) {
+					chunk.putLong(word, bits | mask);
+					correct++;
+					chunk.putInt(offset + CORRECT, correct);
+				}
+				chunk.putInt(offset + FLAGS, FLAG_LAST_OBSERVED_VIOLATION);
+			} else {
+				incorrect++;
+				chunk.putInt(offset + INCORRECT, incorrect);
+				chunk.putInt(offset + FLAGS, 0);
+			}
+			
+			chunk.putDouble(offset + CONFORMANCE, (double) correct / (correct + incorrect));
+			
+			if (relation >= 0) {
+				// each observed allowed relation is counted once, so the correct ones are the distinct ones
+				double comp = lms.getCompleteness(relation, correct);
+				if (!Double.isNaN(comp)) {
+					chunk.putDouble(offset + COMPLETENESS, comp);
+				}
+				double conf = lms.getConfidence(relation);
+				if (!Double.isNaN(conf)) {
+					chunk.putDouble(offset + CONFIDENCE, conf);
+				}
+			}
+		}
+		chunk.putInt(offset + LAST_ACTIVITY, activityId);
+		chunk.putLong(offset + LAST_UPDATE, System.currentTimeMillis());
+	}
+	
+	private int newCase(long hash) {
+		int slot;
+		if (size < maxCasesToStore) {
+			// slots are used in order, until the store is full
+			slot = size++;
+		} else {
+			// reuse the slot of the least recently updated case
+			slot = head;
+			unlink(slot);
+			indexRemove(indexFind(chunks[slot >>> chunkBits].getLong((slot & chunkMask) * recordSize + HASH)));
+		}
+		
+		ByteBuffer chunk = chunks[slot >>> chunkBits];
+		int offset = (slot & chunkMask) * recordSize;
+		chunk.putLong(offset + HASH, hash);
+		chunk.putInt(offset + CORRECT, 0);
+		chunk.putInt(offset + INCORRECT, 0);
+		chunk.putInt(offset + LAST_ACTIVITY, LocalConformanceStatus.NO_ACTIVITY);
+		chunk.putInt(offset + FLAGS, 0);
+		chunk.putDouble(offset + CONFORMANCE, 0d);
+		chunk.putDouble(offset + COMPLETENESS, 0d);
+		chunk.putDouble(offset + CONFIDENCE, 0d);
+		for (int i = 0; i < bitmapWords; i++) {
+			chunk.putLong(offset + BITMAP + (i << 3), 0L);
+		}
+		append(slot);
+		
+		int position = indexFind(hash);
+		indexKeys.putLong(position << 3, hash);
+		indexSlots.putInt(position << 2, slot);
+		return slot;
+	}
+	
+	/*
+	 * Recency list, from the least (head) to the most (tail) recently updated case
+	 */
+	private void moveToTail(int slot) {
+		if (slot != tail) {
+			unlink(slot);
+			append(slot);
+		}
+	}
+	
+	private void append(int slot) {
+		setPrev(slot, tail);
+		setNext(slot, NIL);
+		if (tail == NIL) {
+			head = slot;
+		} else {
+			setNext(tail, slot);
+		}
+		tail = slot;
+	}
+	
+	private void unlink(int slot) {
+		int prev = getPrev(slot);
+		int next = getNext(slot);
+		if (prev == NIL) {
+			head = next;
+		} else {
+			setNext(prev, next);
+		}
+		if (next == NIL) {
+			tail = prev;
+		} else {
+			setPrev(next, prev);
+		}
+	}
+	
+	private int getPrev(int slot) {
+		return chunks[slot >>> chunkBits].getInt((slot & chunkMask) * recordSize + PREV);
+	}
+	
+	private int getNext(int slot) {
+		return chunks[slot >>> chunkBits].getInt((slot & chunkMask) * recordSize + NEXT);
+	}
+	
+	private void setPrev(int slot, int prev) {
+		chunks[slot >>> chunkBits].putInt((slot & chunkMask) * recordSize + PREV, prev);
+	}
+	
+	private void setNext(int slot, int next) {
+		chunks[slot >>> chunkBits].putInt((slot & chunkMask) * recordSize + NEXT, next);
+	}
+	
+	/*
+	 * Index with linear probing, where the empty positions have key 0 (which is never a hash)
+	 */
+	private int lookup(long hash) {
+		int position = indexFind(hash);
+		if (indexKeys.getLong(position << 3) == 0) {
+			return NIL;
+		}
+		return indexSlots.getInt(position << 2);
+	}
+	
+	private int indexFind(long hash) {
+		int position = (int) hash & indexMask;
+		long key;
+		while ((key = indexKeys.getLong(position << 3)) != 0 && key != hash) {
+			position = (position + 1) & indexMask;
+		}
+		return position;
+	}
+	
+	private void indexRemove(int position) {
+		// shift back the following entries of the cluster, so that no tombstone is needed
+		int hole = position;
+		int current = position;
+		while (true) {
+			current = (current + 1) & indexMask;
+			long key = indexKeys.getLong(current << 3);
+			if (key == 0) {
+				break;
+			}
+			int ideal = (int) key & indexMask;
+			if (((current - ideal) & indexMask) >= ((current - hole) & indexMask)) {
+				indexKeys.putLong(hole << 3, key);
+				indexSlots.putInt(hole << 2, indexSlots.getInt(current << 2));
+				hole = current;
+			}
+		}
+		indexKeys.putLong(hole << 3, 0L);
+	}
+	
+	private static long hash(String caseId) {
+		// FNV-1a on the characters, followed by a finalization mix for the lower bits
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < caseId.length(); i++) {
+			h ^= caseId.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h == 0 ? 1 : h;
+	}
+	
+	private void allocate() {
+		int chunksCount = ((maxCasesToStore - 1) >>> chunkBits) + 1;
+		int indexSize = indexMask + 1;
+		ByteBuffer[] buffers = new ByteBuffer[chunksCount];
+		ByteBuffer keys = null;
+		ByteBuffer slots = null;
+		boolean allocated = false;
+		if (file != null) {
+			registerFile(file);
+		}
+		// the mappings stay valid after the channel is closed
+		try (FileChannel channel = file == null ? null : FileChannel.open(file.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long position = 0;
+			for (int i = 0; i < chunksCount; i++) {
+				int records = Math.min(chunkMask + 1, maxCasesToStore - (i << chunkBits));
+				buffers[i] = allocate(channel, position, records * recordSize);
+				position += records * recordSize;
+			}
+			keys = allocate(channel, position, indexSize << 3);
+			position += indexSize << 3;
+			slots = allocate(channel, position, indexSize << 2);
+			allocated = true;
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to map " + file, e);
+		} finally {
+			if (!allocated) {
+				// do not keep the memory allocated so far until the garbage collection
+				for (ByteBuffer buffer : buffers) {
+					release(buffer);
+				}
+				release(keys);
+				unregisterFile();
+			}
+		}
+		chunks = buffers;
+		indexKeys = keys;
+		indexSlots = slots;
+		
+		// a mapped file may contain the entries of a previous run, which are not trusted
+		for (int i = 0; i < indexSize; i++) {
+			indexKeys.putLong(i << 3, 0L);
+		}
+		size = 0;
+		head = NIL;
+		tail = NIL;
+		score = new OnlineConformanceScore();
+	}
+	
+	/*
+	 * Frees a direct or mapped buffer right away. The cleaner is reached through sun.misc.Unsafe, the only
+	 * way to do it on Java 9 and later; if it is not available, the buffer is freed by the garbage collector.
+	 */
+	private static void release(ByteBuffer buffer) {
+		if (buffer == null || !buffer.isDirect()) {
+			return;
+		}
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// left to the garbage collector
+		}
+	}
+	
+	private static ByteBuffer allocate(FileChannel channel, long position, int bytes) throws IOException {
+		ByteBuffer buffer;
+		if (channel == null) {
+			buffer = ByteBuffer.allocateDirect(bytes);
+		} else {
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, bytes);
+		}
+		return buffer.order(ByteOrder.nativeOrder());
+	}
+	
+	/*
+	 * The cases are written from the least to the most recently updated, so that reading them in order
+	 * rebuilds the recency list
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(chunks == null ? 0 : size);
+		for (int slot = chunks == null ? NIL : head; slot != NIL; slot = getNext(slot)) {
+			ByteBuffer chunk = chunks[slot >>> chunkBits];
+			int offset = (slot & chunkMask) * recordSize;
+			out.writeLong(chunk.getLong(offset + HASH));
+			out.writeInt(chunk.getInt(offset + CORRECT));
+			out.writeInt(chunk.getInt(offset + INCORRECT));
+			out.writeInt(chunk.getInt(offset + LAST_ACTIVITY));
+			out.writeInt(chunk.getInt(offset + FLAGS));
+			out.writeLong(chunk.getLong(offset + LAST_UPDATE));
+			out.writeDouble(chunk.getDouble(offset + CONFORMANCE));
+			out.writeDouble(chunk.getDouble(offset + COMPLETENESS));
+			out.writeDouble(chunk.getDouble(offset + CONFIDENCE));
+			for (int i = 0; i < bitmapWords; i++) {
+				out.writeLong(chunk.getLong(offset + BITMAP + (i << 3)));
+			}
+		}
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (file != null) {
+			// the original tracker, or another copy, may still use its file
+			File directory = file.getAbsoluteFile().getParentFile();
+			file = File.createTempFile(file.getName() + "-copy-", null, directory);
+			file.deleteOnExit();
+		}
+		allocate();
+		boolean read = false;
+		try {
+			readCases(in);
+			read = true;
+		} finally {
+			if (!read) {
+				close();
+			}
+		}
+	}
+	
+	private void readCases(ObjectInputStream in) throws IOException {
+		int cases = in.readInt();
+		if (cases < 0 || cases > maxCasesToStore) {
+			throw new IOException("Invalid number of serialized cases: " + cases);
+		}
+		for (int i = 0; i < cases; i++) {
+			int slot = newCase(in.readLong());
+			ByteBuffer chunk = chunks[slot >>> chunkBits];
+			int offset = (slot & chunkMask) * recordSize;
+			chunk.putInt(offset + CORRECT, in.readInt());
+			chunk.putInt(offset + INCORRECT, in.readInt());
+			chunk.putInt(offset + LAST_ACTIVITY, in.readInt());
+			chunk.putInt(offset + FLAGS, in.readInt());
+			chunk.putLong(offset + LAST_UPDATE, in.readLong());
+			chunk.putDouble(offset + CONFORMANCE, in.readDouble());
+			chunk.putDouble(offset + COMPLETENESS, in.readDouble());
+			chunk.putDouble(offset + CONFIDENCE, in.readDouble());
+			for (int w = 0; w < bitmapWords; w++) {
+				chunk.putLong(offset + BITMAP + (w << 3), in.readLong());
+			}
+		}
+	}
+}
@@ -4,41 +4,64 @@ import beamline.events.BEvent;
 import beamline.models.responses.Response;
 
 /**
- * This class models the score of local online conformance
+ * This class models the score of local online conformance. Scores are mutable and can be reused as sinks
+ * filled by {@link ConformanceTracker#replayEvent(BEvent, OnlineConformanceScore)}; a score can be
+ * frozen, after which any attempt to change it fails, so that it can be safely buffered by downstream
+ * operators.
  * 
  * @author Andrea Burattin
  */
 public class OnlineConformanceScore extends Response {
 
 	private static final long serialVersionUID = 6895821762421722787L;
-	private Double conformance = 0d;
-	private Double completeness = 0d;
-	private Double confidence = 0d;
+	private double conformance = 0d;
+	private double completeness = 0d;
+	private double confidence = 0d;
 	private BEvent lastEvent = null;
-	private Double processingTime = 0d;
+	private double processingTime = 0d;
 	private boolean isLastObservedViolation = false;
+	private boolean frozen = false;
 	
-	public Double getConformance() {
+	public OnlineConformanceScore() { }
+	
+	/**
+	 * Creates a new, not frozen, copy of the given score
+	 * 
+	 * @param other the score to copy
+	 */
+	public OnlineConformanceScore(OnlineConformanceScore other) {
+		this.conformance = other.conformance;
+		this.completeness = other.completeness;
+		this.confidence = other.confidence;
+		this.lastEvent = other.lastEvent;
+		this.processingTime = other.processingTime;
+		this.isLastObservedViolation = other.isLastObservedViolation;
+	}
+	
+	public double getConformance() {
 		return conformance;
 	}
 
-	public void setConformance(Double conformance) {
+	public void setConformance(double conformance) {
+		checkNotFrozen();
 		this.conformance = conformance;
 	}
 
-	public Double getCompleteness() {
+	public double getCompleteness() {
 		return completeness;
 	}
 
-	public void setCompleteness(Double completeness) {
+	public void setCompleteness(double completeness) {
+		checkNotFrozen();
 		this.completeness = completeness;
 	}
 
-	public Double getConfidence() {
+	public double getConfidence() {
 		return confidence;
 	}
 
-	public void setConfidence(Double confidence) {
+	public void setConfidence(double confidence) {
+		checkNotFrozen();
 		this.confidence = confidence;
 	}
 	
@@ -47,6 +70,7 @@ public class OnlineConformanceScore extends Response {
 	}
 	
 	public void isLastObservedViolation(boolean isLastObservedVilation) {
+		checkNotFrozen();
 		this.isLastObservedViolation = isLastObservedVilation;
 	}
 	
@@ -55,10 +79,12 @@ public class OnlineConformanceScore extends Response {
 	}
 	
 	public void setLastEvent(BEvent lastEvent) {
+		checkNotFrozen();
 		this.lastEvent = lastEvent;
 	}
 
 	public void setProcessingTime(double l) {
+		checkNotFrozen();
 		this.processingTime = l;
 	}
 	
@@ -66,6 +92,38 @@ public class OnlineConformanceScore extends Response {
 		return processingTime;
 	}
 
+	/**
+	 * Makes this score immutable: all setters will throw an {@link IllegalStateException}
+	 * 
+	 * @return this score
+	 */
+	public OnlineConformanceScore freeze() {
+		frozen = true;
+		return this;
+	}
+	
+	public boolean isFrozen() {
+		return frozen;
+	}
+	
+	/**
+	 * Returns an immutable copy of this score
+	 * 
+	 * @return a frozen copy, or this score if it is already frozen
+	 */
+	public OnlineConformanceScore snapshot() {
+		if (frozen) {
+			return this;
+		}
+		return new OnlineConformanceScore(this).freeze();
+	}
+	
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new IllegalStateException("The score is immutable");
+		}
+	}
+
 	@Override
 	public String toString() {
 		return "last-case-id = " + lastEvent.getTraceName() + "; last-activity = " + lastEvent.getEventName() + "; conformance = " + getConformance() + "; completeness = " + getCompleteness() + "; confidence = " + getConfidence() + "; processing-time = " + getProcessingTime();
@@ -0,0 +1,110 @@
+package beamline.miners.behavioalconformance.model;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.processmining.unfolder.UnfoldingStatistics;
+
+/**
+ * Receives the progress of the construction of a {@link LocalModelStructure}. The three preprocessing
+ * pipelines run concurrently, so implementations must be thread safe. All methods do nothing by default.
+ */
+public interface PreprocessingListener {
+
+	/**
+	 * The phases of the preprocessing, grouped by pipeline
+	 */
+	enum Phase {
+		COVERABILITY_GRAPH,
+		DIRECT_FOLLOWING_RELATIONS,
+		UNFOLDING,
+		COVERABILITY_GRAPH_UNFOLDED,
+		MIN_MAX_RELATIONS_BEFORE,
+		DUAL_NET,
+		UNFOLDING_DUAL,
+		COVERABILITY_GRAPH_DUAL_UNFOLDED,
+		MIN_RELATIONS_AFTER,
+		COMPILE
+	}
+	
+	/**
+	 * Listener which ignores all notifications
+	 */
+	PreprocessingListener NONE = new PreprocessingListener() { };
+
+	/**
+	 * Called before the pipelines are started
+	 */
+	default void preprocessingStarted() { }
+
+	default void phaseStarted(Phase phase) { }
+
+	/**
+	 * Called when a phase is completed
+	 * 
+	 * @param phase the phase
+	 * @param wallTimeNanos the wall time spent in the phase
+	 * @param allocatedBytes the bytes allocated by the thread running the phase (work offloaded to other
+	 * threads, like the parallel expansion of coverability graphs, is not included), or <tt>-1</tt> if
+	 * the JVM does not measure allocations
+	 */
+	default void phaseCompleted(Phase phase, long wallTimeNanos, long allocatedBytes) { }
+
+	default void coverabilityGraphBuilt(Phase phase, int states, int transitions) { }
+
+	/**
+	 * Called after each step of an unfolding
+	 * 
+	 * @param phase the phase
+	 * @param statistics the size of the branching process so far
+	 */
+	default void unfoldingStep(Phase phase, UnfoldingStatistics statistics) { }
+
+	/**
+	 * Called when an unfolding is built. If the unfolding is not complete (see
+	 * {@link UnfoldingStatistics#isComplete()}), the relations of the pipeline are approximated on the
+	 * net which was not unfolded.
+	 * 
+	 * @param phase the phase
+	 * @param statistics the size of the unfolding
+	 */
+	default void unfoldingBuilt(Phase phase, UnfoldingStatistics statistics) { }
+
+	default void preprocessingCompleted(long wallTimeNanos) { }
+
+	/**
+	 * Returns a listener which prints one line per notification on the given stream
+	 * 
+	 * @param out the stream
+	 * @return the listener
+	 */
+	static PreprocessingListener printingTo(PrintStream out) {
+		return new PreprocessingListener() {
+			@Override
+			public void preprocessingStarted() {
+				out.println("Preprocessing started...");
+			}
+			
+			@Override
+			public void phaseCompleted(Phase phase, long wallTimeNanos, long allocatedBytes) {
+				out.println(phase + ": " + TimeUnit.NANOSECONDS.toMillis(wallTimeNanos) + " ms" +
+						(allocatedBytes < 0 ? "" : ", " + (allocatedBytes >> 10) + " KB allocated"));
+			}
+			
+			@Override
+			public void coverabilityGraphBuilt(Phase phase, int states, int transitions) {
+				out.println(phase + ": " + states + " states, " + transitions + " transitions");
+			}
+			
+			@Override
+			public void unfoldingBuilt(Phase phase, UnfoldingStatistics statistics) {
+				out.println(phase + ": " + statistics + (statistics.isComplete() ? "" : ", relations approximated on the folded net"));
+			}
+			
+			@Override
+			public void preprocessingCompleted(long wallTimeNanos) {
+				out.println("Preprocessing complete: " + TimeUnit.NANOSECONDS.toMillis(wallTimeNanos) + " ms");
+			}
+		};
+	}
+}
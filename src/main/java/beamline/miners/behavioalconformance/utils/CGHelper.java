@@ -2,16 +2,19 @@ package beamline.miners.behavioalconformance.utils;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
 
 import org.processmining.models.graphbased.directed.petrinet.Petrinet;
 import org.processmining.models.graphbased.directed.petrinet.elements.Place;
 import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
 import org.processmining.models.graphbased.directed.transitionsystem.CoverabilityGraph;
-import org.processmining.models.graphbased.directed.transitionsystem.State;
 import org.processmining.models.graphbased.directed.transitionsystem.TransitionSystem;
 import org.processmining.models.graphbased.directed.transitionsystem.TransitionSystemFactory;
 import org.processmining.models.graphbased.directed.utils.Node;
@@ -23,10 +26,63 @@ import org.processmining.models.semantics.petrinet.impl.PetrinetSemanticsFactory
 
 public class CGHelper {
 
+	// frontiers smaller than this are expanded by the calling thread
+	private static final int PARALLEL_THRESHOLD = 32;
+	// number of frontier nodes expanded by each fork-join task
+	private static final int TASK_SIZE = 8;
+
 	public static CoverabilityGraph generate(Petrinet net, Marking initial) {
+		return generate(net, initial, StateSpaceBudget.UNLIMITED);
+	}
+	
+	/**
+	 * Builds the coverability graph within the given budget
+	 * 
+	 * @param net the net
+	 * @param initial the initial marking
+	 * @param budget the limits of the graph
+	 * @return the coverability graph
+	 * @throws StateSpaceBudget.ExceededException if the graph exceeds the budget
+	 */
+	public static CoverabilityGraph generate(Petrinet net, Marking initial, StateSpaceBudget budget) {
 		Semantics<Marking, Transition> semantics = PetrinetSemanticsFactory.regularPetrinetSemantics(Petrinet.class);
 		semantics.initialize(net.getTransitions(), initial);
-		return doBreadthFirst(net.getLabel(), new CTMarking(initial), semantics);
+		return doBreadthFirst(net.getLabel(), new CTMarking(initial), semantics, budget);
+	}
+	
+	/**
+	 * Builds the coverability graph expanding the frontier of the breadth-first search on the given pool.
+	 * The result is the same graph built by {@link #generate(Petrinet, Marking)}.
+	 * 
+	 * @param net the net
+	 * @param initial the initial marking
+	 * @param pool the pool used to expand the frontier
+	 * @return the coverability graph
+	 */
+	public static CoverabilityGraph generate(Petrinet net, Marking initial, ForkJoinPool pool) {
+		return generate(net, initial, pool, StateSpaceBudget.UNLIMITED);
+	}
+	
+	/**
+	 * Builds the coverability graph on the given pool, see {@link #generate(Petrinet, Marking, ForkJoinPool)},
+	 * within the given budget
+	 * 
+	 * @param net the net
+	 * @param initial the initial marking
+	 * @param pool the pool used to expand the frontier
+	 * @param budget the limits of the graph
+	 * @return the coverability graph
+	 * @throws StateSpaceBudget.ExceededException if the graph exceeds the budget
+	 */
+	public static CoverabilityGraph generate(final Petrinet net, final Marking initial, ForkJoinPool pool, StateSpaceBudget budget) {
+		return doParallelBreadthFirst(net.getLabel(), new CTMarking(initial), new Supplier<Semantics<Marking, Transition>>() {
+			@Override
+			public Semantics<Marking, Transition> get() {
+				Semantics<Marking, Transition> semantics = PetrinetSemanticsFactory.regularPetrinetSemantics(Petrinet.class);
+				semantics.initialize(net.getTransitions(), initial);
+				return semantics;
+			}
+		}, pool, budget);
 	}
 	
 	/**
@@ -46,6 +102,27 @@ public class CGHelper {
 	 */
 	public static CoverabilityGraph doBreadthFirst(String label, CTMarking state,
 			Semantics<Marking, Transition> semantics) {
+		return doBreadthFirst(label, state, semantics, StateSpaceBudget.UNLIMITED);
+	}
+	
+	/**
+	 * Builds a coverability graph from initial state with breadth-first approach, see
+	 * {@link #doBreadthFirst(String, CTMarking, Semantics)}, within the given budget
+	 * 
+	 * @param label
+	 *            label of the net
+	 * @param state
+	 *            Initial state (initial marking)
+	 * @param semantics
+	 *            semantics obtained from initial state
+	 * @param budget
+	 *            the limits of the graph
+	 * @return the coverability graph
+	 * @throws StateSpaceBudget.ExceededException if the graph exceeds the budget
+	 */
+	public static CoverabilityGraph doBreadthFirst(String label, CTMarking state,
+			Semantics<Marking, Transition> semantics, StateSpaceBudget budget) {
+		long start = System.nanoTime();
 
 		// work using tree and transition system in parallel
 		Node<CTMarking> root = new Node<CTMarking>();
@@ -57,6 +134,10 @@ public class CGHelper {
 		// build transitionSystem based on the root node
 		CoverabilityGraph ts = TransitionSystemFactory.newCoverabilityGraph("Coverability Graph of " + label);
 		ts.addState(state);
+		
+		// index of the markings already in the transition system, to find duplicates in constant time
+		Set<CTMarking> discovered = new HashSet<CTMarking>();
+		discovered.add(state);
 
 		// expands all
 		Queue<Node<CTMarking>> expandedNodes = new LinkedList<Node<CTMarking>>();
@@ -65,13 +146,205 @@ public class CGHelper {
 		// if CG is used as an intermediary result, no need to have context as a parameter
 		// therefore the context should be null
 		// checking context inside of extend methods
+		int[] edges = new int[1];
 		do {
-			Collection<? extends Node<CTMarking>> newNodes = extend(expandedNodes.poll(), semantics, ts);
+			Collection<? extends Node<CTMarking>> newNodes = extend(expandedNodes.poll(), semantics, ts, discovered, edges);
 			expandedNodes.addAll(newNodes);
+			budget.check(discovered.size(), edges[0], start);
 		} while (!expandedNodes.isEmpty());
 		return ts;
 	}
 	
+	/**
+	 * Builds a coverability graph from initial state with a level-synchronous breadth-first approach: all
+	 * the nodes of a level are expanded in parallel, each worker with its own semantics, then the children
+	 * are added to the transition system by a single thread, in the same order of
+	 * {@link #doBreadthFirst(String, CTMarking, Semantics)}. Firing the transitions and looking for
+	 * coverable ancestors only read the tree built up to the previous level, while the checks against the
+	 * already discovered markings are done during the merge, so the resulting graph is the same of the
+	 * sequential construction.
+	 * 
+	 * @param label
+	 *            label of the net
+	 * @param state
+	 *            Initial state (initial marking)
+	 * @param semanticsFactory
+	 *            provider of new semantics, initialized on the net, one for each worker
+	 * @param pool
+	 *            the pool used to expand the frontier
+	 * @return the coverability graph
+	 */
+	public static CoverabilityGraph doParallelBreadthFirst(String label, CTMarking state,
+			final Supplier<Semantics<Marking, Transition>> semanticsFactory, ForkJoinPool pool) {
+		return doParallelBreadthFirst(label, state, semanticsFactory, pool, StateSpaceBudget.UNLIMITED);
+	}
+	
+	/**
+	 * Builds a coverability graph from initial state with a level-synchronous breadth-first approach, see
+	 * {@link #doParallelBreadthFirst(String, CTMarking, Supplier, ForkJoinPool)}, within the given budget.
+	 * The budget is checked after each level and while merging it.
+	 * 
+	 * @param label
+	 *            label of the net
+	 * @param state
+	 *            Initial state (initial marking)
+	 * @param semanticsFactory
+	 *            provider of new semantics, initialized on the net, one for each worker
+	 * @param pool
+	 *            the pool used to expand the frontier
+	 * @param budget
+	 *            the limits of the graph
+	 * @return the coverability graph
+	 * @throws StateSpaceBudget.ExceededException if the graph exceeds the budget
+	 */
+	public static CoverabilityGraph doParallelBreadthFirst(String label, CTMarking state,
+			final Supplier<Semantics<Marking, Transition>> semanticsFactory, ForkJoinPool pool, StateSpaceBudget budget) {
+		long start = System.nanoTime();
+		int edges = 0;
+		
+		Node<CTMarking> root = new Node<CTMarking>();
+		root.setData(new CTMarking(state));
+		root.setParent(null);
+		
+		CoverabilityGraph ts = TransitionSystemFactory.newCoverabilityGraph("Coverability Graph of " + label);
+		ts.addState(state);
+		Set<CTMarking> discovered = new HashSet<CTMarking>();
+		discovered.add(state);
+		
+		final ThreadLocal<Semantics<Marking, Transition>> semantics = new ThreadLocal<Semantics<Marking, Transition>>() {
+			@Override
+			protected Semantics<Marking, Transition> initialValue() {
+				return semanticsFactory.get();
+			}
+		};
+		
+		List<Node<CTMarking>> frontier = new ArrayList<Node<CTMarking>>();
+		frontier.add(root);
+		while (!frontier.isEmpty()) {
+			// expansion of the level
+			@SuppressWarnings("unchecked")
+			List<Successor>[] successors = new List[frontier.size()];
+			if (frontier.size() < PARALLEL_THRESHOLD) {
+				for (int i = 0; i < frontier.size(); i++) {
+					successors[i] = fire(frontier.get(i), semantics.get());
+				}
+			} else {
+				pool.invoke(new Expansion(frontier, successors, semantics, 0, frontier.size()));
+			}
+			
+			// merge, in the order of the sequential construction
+			List<Node<CTMarking>> next = new ArrayList<Node<CTMarking>>();
+			for (int i = 0; i < frontier.size(); i++) {
+				Node<CTMarking> parent = frontier.get(i);
+				for (Successor successor : successors[i]) {
+					CTMarking marking = successor.marking;
+					boolean expand = true;
+					if (discovered.contains(marking) || marking.equals(successor.coverable)) {
+						// exactly the same node is found
+						expand = false;
+					} else if (successor.coverable != null) {
+						// places that occur more often than in the coverable marking become omega
+						marking = successor.omega;
+					}
+					
+					Node<CTMarking> node = new Node<CTMarking>();
+					node.setData(marking);
+					node.setParent(parent);
+					parent.addChild(node);
+					ts.addState(marking);
+					discovered.add(marking);
+					ts.addTransition(parent.getData(), marking, successor.transition);
+					edges++;
+					if (expand) {
+						next.add(node);
+					}
+				}
+				budget.check(discovered.size(), edges, start);
+			}
+			frontier = next;
+		}
+		return ts;
+	}
+	
+	/*
+	 * Fires all the executable transitions of the node, without changing the tree
+	 */
+	private static List<Successor> fire(Node<CTMarking> root, Semantics<Marking, Transition> semantics) {
+		Marking rootState = root.getData();
+		semantics.setCurrentState(rootState);
+		List<Successor> successors = new ArrayList<Successor>();
+		for (Transition t : semantics.getExecutableTransitions()) {
+			semantics.setCurrentState(rootState);
+			try {
+				semantics.executeExecutableTransition(t);
+			} catch (IllegalTransitionException e) {
+				e.printStackTrace();
+				assert (false);
+			}
+			
+			Successor successor = new Successor();
+			successor.transition = t;
+			successor.marking = new CTMarking(semantics.getCurrentState());
+			if (root.getData().hasOmegaPlace()) {
+				successor.marking = successor.marking.transformToOmega(root.getData().getOmegaPlaces());
+			}
+			successor.coverable = getIdenticalOrCoverable(successor.marking, root);
+			if (successor.coverable != null && !successor.coverable.equals(successor.marking)) {
+				CTMarking temp = new CTMarking(successor.marking);
+				temp.removeAll(successor.coverable);
+				successor.omega = successor.marking.transformToOmega(temp.baseSet());
+			}
+			successors.add(successor);
+		}
+		return successors;
+	}
+	
+	/*
+	 * A child of a node of the frontier, before being added to the tree
+	 */
+	private static class Successor {
+		Transition transition;
+		CTMarking marking;
+		CTMarking coverable;
+		CTMarking omega;
+	}
+	
+	/*
+	 * Expansion of a range of the frontier
+	 */
+	private static class Expansion extends RecursiveAction {
+		
+		private static final long serialVersionUID = 3049384811651003283L;
+		private List<Node<CTMarking>> frontier;
+		private List<Successor>[] successors;
+		private ThreadLocal<Semantics<Marking, Transition>> semantics;
+		private int from;
+		private int to;
+		
+		public Expansion(List<Node<CTMarking>> frontier, List<Successor>[] successors, ThreadLocal<Semantics<Marking, Transition>> semantics, int from, int to) {
+			this.frontier = frontier;
+			this.successors = successors;
+			this.semantics = semantics;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from <= TASK_SIZE) {
+				Semantics<Marking, Transition> workerSemantics = semantics.get();
+				for (int i = from; i < to; i++) {
+					successors[i] = fire(frontier.get(i), workerSemantics);
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(
+						new Expansion(frontier, successors, semantics, from, middle),
+						new Expansion(frontier, successors, semantics, middle, to));
+			}
+		}
+	}
+	
 	/**
 	 * Extend an input state to get all of its children by executing available
 	 * transition. Omega notation is added as needed
@@ -86,10 +359,14 @@ public class CGHelper {
 	 *            Context of the net
 	 * @param ts
 	 *            transition system associated with the tree
+	 * @param discovered
+	 *            markings of the states of the transition system
+	 * @param edges
+	 *            counter of the transitions added to the transition system
 	 * @return list of all nodes need to be further extended
 	 */
 	private static Collection<? extends Node<CTMarking>> extend(Node<CTMarking> root,
-			Semantics<Marking, Transition> semantics, TransitionSystem ts) {
+			Semantics<Marking, Transition> semantics, TransitionSystem ts, Set<CTMarking> discovered, int[] edges) {
 		// init
 		Marking rootState = root.getData();
 		semantics.setCurrentState(rootState);
@@ -101,6 +378,7 @@ public class CGHelper {
 
 		// execute transitions
 		for (Transition t : semantics.getExecutableTransitions()) {
+			edges[0]++;
 
 			//			if (context != null)
 			//				context.log("Transition going to be executed : " + t.getLabel(), MessageLevel.DEBUG);
@@ -138,10 +416,8 @@ public class CGHelper {
 			//			if (context != null)
 			//				context.log("root = " + root.getData().toString(), MessageLevel.DEBUG);
 
-			for (State node : ts.getNodes()) {
-				if (node.getIdentifier().equals(currStateCTMark)) {
-					lessOrEqualMarking = currStateCTMark;
-				}
+			if (discovered.contains(currStateCTMark)) {
+				lessOrEqualMarking = currStateCTMark;
 			}
 			if (lessOrEqualMarking == null) {
 				lessOrEqualMarking = getIdenticalOrCoverable(currStateCTMark, root);
@@ -179,6 +455,7 @@ public class CGHelper {
 
 					// update transition system
 					ts.addState(currStateCTMark);
+					discovered.add(currStateCTMark);
 					// BVD:new Marking(currStateCTMark));
 					ts.addTransition(rootState, currStateCTMark, t);
 					// BVD: new Marking(currStateCTMarkNode.getData()),
@@ -201,6 +478,7 @@ public class CGHelper {
 
 					// update transition system
 					ts.addState(currStateCTMark);
+					discovered.add(currStateCTMark);
 					// BVD:new Marking(currStateCTMark));
 					ts.addTransition(rootState, currStateCTMark, t);
 					// BVD: new Marking(currStateCTMarkNode.getData()),
@@ -220,6 +498,7 @@ public class CGHelper {
 
 				// update transition system
 				ts.addState(currStateCTMark);
+				discovered.add(currStateCTMark);
 				// BVD:new Marking(currStateCTMark));
 				ts.addTransition(rootState, currStateCTMark, t);
 				// BVD: new Marking(currStateCTMarkNode.getData()),
@@ -11,6 +11,9 @@ import org.processmining.models.graphbased.directed.petrinet.elements.Place;
 import org.processmining.models.graphbased.directed.petrinet.impl.PetrinetFactory;
 import org.processmining.models.semantics.petrinet.Marking;
 import org.processmining.unfolder.Unfolder;
+import org.processmining.unfolder.UnfoldingBudget;
+import org.processmining.unfolder.UnfoldingProgressListener;
+import org.processmining.unfolder.UnfoldingStatistics;
 
 import andbur.hub.top.petrinet.PetriNet;
 
@@ -21,6 +24,14 @@ public class PetrinetHelper {
 	}
 
 	public static Pair<Petrinet, Marking> unfold(Petrinet net) throws Exception {
+		return unfold(net, null);
+	}
+
+	public static Pair<Petrinet, Marking> unfold(Petrinet net, UnfoldingStatistics statistics) throws Exception {
+		return unfold(net, statistics, UnfoldingBudget.UNLIMITED, UnfoldingProgressListener.NONE);
+	}
+
+	public static Pair<Petrinet, Marking> unfold(Petrinet net, UnfoldingStatistics statistics, UnfoldingBudget budget, UnfoldingProgressListener progress) throws Exception {
 		//		File pnmlOriginal = File.createTempFile("petrinet", "original");
 		//		String pnmlUnfolded = pnmlOriginal.getAbsolutePath() + "-unfolded";
 		//		
@@ -45,10 +56,10 @@ public class PetrinetHelper {
 		if (marking.size() == 0) {
 			marking = getInitialM(net);
 		}
-		// Convert ProM net to PNAPI net
+		// Convert ProM net to PNAPI net, a new one for each call since the unfolder renames its nodes
 		PetriNet pn = toPNAPIFormat(net, marking);
-		// Call the unfolder on the PNAPI net
-		Petrinet netUnfolded = Unfolder.unfold(pn);
+		// Call the unfolder on the PNAPI net, which returns a prefix if the budget runs out
+		Petrinet netUnfolded = Unfolder.unfold(pn, statistics, budget, progress);
 		// Create initial marking 
 		marking = getInitialM(netUnfolded);
 		// Connect net and initial marking
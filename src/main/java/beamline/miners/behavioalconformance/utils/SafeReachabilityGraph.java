@@ -0,0 +1,494 @@
+package beamline.miners.behavioalconformance.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+import org.processmining.models.graphbased.directed.petrinet.elements.Arc;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.semantics.petrinet.Marking;
+
+/**
+ * Reachability graph of a 1-safe Petri net. Markings are bit vectors, transitions are compiled into the
+ * bit masks of their input and output places, and the graph is stored in compressed sparse row form:
+ * states are numbered from <tt>0</tt> (the initial marking) in breadth-first order, and edges are
+ * numbered so that the edges leaving state <tt>s</tt> are the ones in
+ * [{@link #getOutEdgesStart(int)}, {@link #getOutEdgesEnd(int)}). This is the same graph built by
+ * {@link CGHelper} for safe nets, without the generic semantics, the multiset markings and the objects of
+ * the transition system.
+ */
+public class SafeReachabilityGraph {
+
+	private int states;
+	private int edges;
+	private int[] outStart;
+	private int[] edgeSource;
+	private int[] edgeTarget;
+	private int[] edgeTransition;
+	private int[] inStart;
+	private int[] inEdges;
+	private String[] transitionLabels;
+	private boolean[] transitionTau;
+
+	// closure of the silent transitions, computed on first use
+	private int[] componentOf;
+	private int[][] incomingNonTau;
+	private int[][] outgoingNonTau;
+
+	private SafeReachabilityGraph() { }
+
+	/**
+	 * Builds the reachability graph of the given net
+	 * 
+	 * @param net the net
+	 * @param initial the initial marking
+	 * @return the reachability graph, or <tt>null</tt> if the net is not 1-safe (or has weighted arcs), in
+	 * which case the coverability graph must be used
+	 */
+	public static SafeReachabilityGraph build(Petrinet net, Marking initial) {
+		return build(net, initial, StateSpaceBudget.UNLIMITED);
+	}
+	
+	/**
+	 * Builds the reachability graph of the given net within the given budget
+	 * 
+	 * @param net the net
+	 * @param initial the initial marking
+	 * @param budget the limits of the graph
+	 * @return the reachability graph, or <tt>null</tt> if the net is not 1-safe (or has weighted arcs)
+	 * @throws StateSpaceBudget.ExceededException if the graph exceeds the budget
+	 */
+	public static SafeReachabilityGraph build(Petrinet net, Marking initial, StateSpaceBudget budget) {
+		long start = System.nanoTime();
+		Map<PetrinetNode, Integer> placeIds = new HashMap<PetrinetNode, Integer>();
+		for (Place p : net.getPlaces()) {
+			placeIds.put(p, placeIds.size());
+		}
+		List<Transition> transitions = new ArrayList<Transition>(net.getTransitions());
+		Map<PetrinetNode, Integer> transitionIds = new HashMap<PetrinetNode, Integer>();
+		for (Transition t : transitions) {
+			transitionIds.put(t, transitionIds.size());
+		}
+		int words = Math.max(1, (placeIds.size() + 63) >>> 6);
+		
+		// compile the transitions
+		long[] pre = new long[transitions.size() * words];
+		long[] post = new long[transitions.size() * words];
+		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> e : net.getEdges()) {
+			if (e instanceof Arc && ((Arc) e).getWeight() != 1) {
+				return null;
+			}
+			Integer place = placeIds.get(e.getSource());
+			Integer transition = transitionIds.get(e.getTarget());
+			long[] masks = pre;
+			if (place == null) {
+				place = placeIds.get(e.getTarget());
+				transition = transitionIds.get(e.getSource());
+				masks = post;
+			}
+			if (place == null || transition == null) {
+				return null;
+			}
+			masks[transition * words + (place >>> 6)] |= 1L << place;
+		}
+		
+		long[] marking = new long[words];
+		for (Place p : initial.baseSet()) {
+			Integer place = placeIds.get(p);
+			if (place == null || initial.occurrences(p) > 1) {
+				return null;
+			}
+			if (initial.occurrences(p) == 1) {
+				marking[place >>> 6] |= 1L << place;
+			}
+		}
+		
+		// breadth-first exploration: states are numbered in discovery order, so the queue is implicit
+		MarkingTable markings = new MarkingTable(words);
+		markings.add(marking);
+		SafeReachabilityGraph graph = new SafeReachabilityGraph();
+		graph.outStart = new int[16];
+		graph.edgeTarget = new int[16];
+		graph.edgeTransition = new int[16];
+		long[] current = new long[words];
+		long[] successor = new long[words];
+		for (int s = 0; s < markings.size(); s++) {
+			markings.get(s, current);
+			graph.outStart = ensureCapacity(graph.outStart, s + 2);
+			graph.outStart[s] = graph.edges;
+			for (int t = 0; t < transitions.size(); t++) {
+				boolean enabled = true;
+				for (int w = 0; w < words && enabled; w++) {
+					enabled = (current[w] & pre[t * words + w]) == pre[t * words + w];
+				}
+				if (!enabled) {
+					continue;
+				}
+				for (int w = 0; w < words; w++) {
+					long consumed = current[w] & ~pre[t * words + w];
+					if ((consumed & post[t * words + w]) != 0) {
+						// a place would get a second token
+						return null;
+					}
+					successor[w] = consumed | post[t * words + w];
+				}
+				int target = markings.add(successor);
+				graph.edgeTarget = ensureCapacity(graph.edgeTarget, graph.edges + 1);
+				graph.edgeTransition = ensureCapacity(graph.edgeTransition, graph.edges + 1);
+				graph.edgeTarget[graph.edges] = target;
+				graph.edgeTransition[graph.edges] = t;
+				graph.edges++;
+			}
+			budget.check(markings.size(), graph.edges, start);
+		}
+		graph.states = markings.size();
+		graph.outStart[graph.states] = graph.edges;
+		graph.outStart = Arrays.copyOf(graph.outStart, graph.states + 1);
+		graph.edgeTarget = Arrays.copyOf(graph.edgeTarget, graph.edges);
+		graph.edgeTransition = Arrays.copyOf(graph.edgeTransition, graph.edges);
+		
+		graph.edgeSource = new int[graph.edges];
+		graph.inStart = new int[graph.states + 1];
+		for (int s = 0; s < graph.states; s++) {
+			for (int e = graph.outStart[s]; e < graph.outStart[s + 1]; e++) {
+				graph.edgeSource[e] = s;
+				graph.inStart[graph.edgeTarget[e] + 1]++;
+			}
+		}
+		for (int s = 0; s < graph.states; s++) {
+			graph.inStart[s + 1] += graph.inStart[s];
+		}
+		graph.inEdges = new int[graph.edges];
+		int[] next = Arrays.copyOf(graph.inStart, graph.states);
+		for (int e = 0; e < graph.edges; e++) {
+			graph.inEdges[next[graph.edgeTarget[e]]++] = e;
+		}
+		
+		graph.transitionLabels = new String[transitions.size()];
+		graph.transitionTau = new boolean[transitions.size()];
+		for (int t = 0; t < transitions.size(); t++) {
+			graph.transitionLabels[t] = transitions.get(t).getLabel();
+			graph.transitionTau[t] = TSUtils.isLabelTau(graph.transitionLabels[t]);
+		}
+		return graph;
+	}
+	
+	public int getStatesCount() {
+		return states;
+	}
+	
+	public int getEdgesCount() {
+		return edges;
+	}
+	
+	public int getOutEdgesStart(int state) {
+		return outStart[state];
+	}
+	
+	public int getOutEdgesEnd(int state) {
+		return outStart[state + 1];
+	}
+	
+	public int getInEdgesCount(int state) {
+		return inStart[state + 1] - inStart[state];
+	}
+	
+	/**
+	 * Returns the <tt>i</tt>-th edge entering the given state
+	 * 
+	 * @param state the state
+	 * @param i the position of the edge, between <tt>0</tt> and {@link #getInEdgesCount(int)}
+	 * @return the edge
+	 */
+	public int getInEdge(int state, int i) {
+		return inEdges[inStart[state] + i];
+	}
+	
+	public int getSource(int edge) {
+		return edgeSource[edge];
+	}
+	
+	public int getTarget(int edge) {
+		return edgeTarget[edge];
+	}
+	
+	public String getLabel(int edge) {
+		return transitionLabels[edgeTransition[edge]];
+	}
+	
+	public boolean isTau(int edge) {
+		return transitionTau[edgeTransition[edge]];
+	}
+	
+	/**
+	 * Returns the non silent edges reaching the given state, possibly through silent ones (see
+	 * {@link TauClosure}). The returned array is shared and must not be modified.
+	 * 
+	 * @param state the state
+	 * @return the edges
+	 */
+	public int[] getIncomingNonTau(int state) {
+		computeTauClosure();
+		return incomingNonTau[componentOf[state]];
+	}
+	
+	/**
+	 * Returns the non silent edges leaving the given state, possibly after silent ones (see
+	 * {@link TauClosure}). The returned array is shared and must not be modified.
+	 * 
+	 * @param state the state
+	 * @return the edges
+	 */
+	public int[] getOutgoingNonTau(int state) {
+		computeTauClosure();
+		return outgoingNonTau[componentOf[state]];
+	}
+	
+	/**
+	 * Computes the shortest paths from the given state to all the others, as the breadth-first search
+	 * tree rooted in the state
+	 * 
+	 * @param source the source state, or <tt>-1</tt> for no source
+	 * @return for each state, the last edge of a shortest path from the source, or <tt>-1</tt> if the
+	 * state is the source or is not reachable
+	 */
+	public int[] getShortestPathTree(int source) {
+		int[] parentEdge = new int[states];
+		Arrays.fill(parentEdge, -1);
+		if (source < 0) {
+			return parentEdge;
+		}
+		int[] queue = new int[states];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = source;
+		while (head < tail) {
+			int s = queue[head++];
+			for (int e = outStart[s]; e < outStart[s + 1]; e++) {
+				int target = edgeTarget[e];
+				if (target != source && parentEdge[target] == -1) {
+					parentEdge[target] = e;
+					queue[tail++] = target;
+				}
+			}
+		}
+		return parentEdge;
+	}
+	
+	/**
+	 * Returns, for each state, the number of distinct direct following relations, among non silent edges,
+	 * observed along its path in the given shortest path tree, i.e., the size of
+	 * {@link TSUtils#getShortestPath(SafeReachabilityGraph, int[], int)}
+	 * 
+	 * @param tree the shortest path tree, see {@link #getShortestPathTree(int)}
+	 * @return the number of relations of each state
+	 */
+	public int[] getPathRelationsCounts(int[] tree) {
+		Map<String, Integer> labelIds = new HashMap<String, Integer>();
+		int[] transitionLabelIds = new int[transitionLabels.length];
+		for (int t = 0; t < transitionLabels.length; t++) {
+			transitionLabelIds[t] = -1;
+			if (!transitionTau[t]) {
+				Integer label = labelIds.get(transitionLabels[t]);
+				if (label == null) {
+					label = labelIds.size();
+					labelIds.put(transitionLabels[t], label);
+				}
+				transitionLabelIds[t] = label;
+			}
+		}
+		int[] parentState = new int[states];
+		int[] parentLabel = new int[states];
+		for (int s = 0; s < states; s++) {
+			parentState[s] = tree[s] == -1 ? -1 : edgeSource[tree[s]];
+			parentLabel[s] = tree[s] == -1 ? -1 : transitionLabelIds[edgeTransition[tree[s]]];
+		}
+		return ShortestPathTree.countPathRelations(parentState, parentLabel, labelIds.size());
+	}
+	
+	/*
+	 * Same construction of TauClosure, on edge ids
+	 */
+	private void computeTauClosure() {
+		if (componentOf != null) {
+			return;
+		}
+		int[] tauStart = new int[states + 1];
+		int[] tauTarget = new int[edges];
+		int tauEdges = 0;
+		for (int s = 0; s < states; s++) {
+			for (int e = outStart[s]; e < outStart[s + 1]; e++) {
+				if (isTau(e)) {
+					tauTarget[tauEdges++] = edgeTarget[e];
+				}
+			}
+			tauStart[s + 1] = tauEdges;
+		}
+		int[] components = TauClosure.computeComponents(tauStart, tauTarget);
+		int count = 0;
+		for (int c : components) {
+			count = Math.max(count, c + 1);
+		}
+		int[] membersStart = new int[count + 1];
+		for (int s = 0; s < states; s++) {
+			membersStart[components[s] + 1]++;
+		}
+		for (int c = 0; c < count; c++) {
+			membersStart[c + 1] += membersStart[c];
+		}
+		int[] members = new int[states];
+		int[] next = Arrays.copyOf(membersStart, count);
+		for (int s = 0; s < states; s++) {
+			members[next[components[s]]++] = s;
+		}
+		
+		// the last component each edge has been added to, to avoid duplicates
+		int[] addedTo = new int[edges];
+		int[] buffer = new int[edges];
+		outgoingNonTau = new int[count][];
+		Arrays.fill(addedTo, -1);
+		for (int c = 0; c < count; c++) {
+			int size = 0;
+			for (int m = membersStart[c]; m < membersStart[c + 1]; m++) {
+				int s = members[m];
+				for (int e = outStart[s]; e < outStart[s + 1]; e++) {
+					if (!isTau(e)) {
+						size = add(e, c, addedTo, buffer, size);
+					} else if (components[edgeTarget[e]] != c) {
+						for (int reached : outgoingNonTau[components[edgeTarget[e]]]) {
+							size = add(reached, c, addedTo, buffer, size);
+						}
+					}
+				}
+			}
+			outgoingNonTau[c] = Arrays.copyOf(buffer, size);
+		}
+		incomingNonTau = new int[count][];
+		Arrays.fill(addedTo, -1);
+		for (int c = count - 1; c >= 0; c--) {
+			int size = 0;
+			for (int m = membersStart[c]; m < membersStart[c + 1]; m++) {
+				int s = members[m];
+				for (int i = inStart[s]; i < inStart[s + 1]; i++) {
+					int e = inEdges[i];
+					if (!isTau(e)) {
+						size = add(e, c, addedTo, buffer, size);
+					} else if (components[edgeSource[e]] != c) {
+						for (int reached : incomingNonTau[components[edgeSource[e]]]) {
+							size = add(reached, c, addedTo, buffer, size);
+						}
+					}
+				}
+			}
+			incomingNonTau[c] = Arrays.copyOf(buffer, size);
+		}
+		componentOf = components;
+	}
+	
+	private static int add(int edge, int component, int[] addedTo, int[] buffer, int size) {
+		if (addedTo[edge] != component) {
+			addedTo[edge] = component;
+			buffer[size++] = edge;
+		}
+		return size;
+	}
+	
+	private static int[] ensureCapacity(int[] array, int capacity) {
+		if (array.length >= capacity) {
+			return array;
+		}
+		return Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+	}
+	
+	/*
+	 * Set of markings stored in a flat array, indexed by an open addressing hash table
+	 */
+	private static class MarkingTable {
+
+		private final int words;
+		private long[] markings;
+		private int[] table;
+		private int size = 0;
+		
+		MarkingTable(int words) {
+			this.words = words;
+			this.markings = new long[16 * words];
+			this.table = new int[32];
+		}
+		
+		int size() {
+			return size;
+		}
+		
+		void get(int id, long[] marking) {
+			System.arraycopy(markings, id * words, marking, 0, words);
+		}
+		
+		/*
+		 * Returns the id of the given marking, adding it if it is new
+		 */
+		int add(long[] marking) {
+			int mask = table.length - 1;
+			for (int slot = hash(marking, 0) & mask; ; slot = (slot + 1) & mask) {
+				int id = table[slot] - 1;
+				if (id < 0) {
+					break;
+				}
+				if (equals(id, marking)) {
+					return id;
+				}
+			}
+			
+			if (markings.length < (size + 1) * words) {
+				markings = Arrays.copyOf(markings, markings.length * 2);
+			}
+			System.arraycopy(marking, 0, markings, size * words, words);
+			int id = size++;
+			if (size * 2 > table.length) {
+				rehash();
+			} else {
+				insert(id);
+			}
+			return id;
+		}
+		
+		private void insert(int id) {
+			int mask = table.length - 1;
+			int slot = hash(markings, id * words) & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = id + 1;
+		}
+		
+		private void rehash() {
+			table = new int[table.length * 2];
+			for (int id = 0; id < size; id++) {
+				insert(id);
+			}
+		}
+		
+		private boolean equals(int id, long[] marking) {
+			for (int w = 0; w < words; w++) {
+				if (markings[id * words + w] != marking[w]) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		private int hash(long[] array, int offset) {
+			long h = 0;
+			for (int w = 0; w < words; w++) {
+				h = (h ^ array[offset + w]) * 0x9E3779B97F4A7C15L;
+			}
+			return (int) (h ^ (h >>> 32));
+		}
+	}
+}
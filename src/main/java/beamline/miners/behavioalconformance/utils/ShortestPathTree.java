@@ -0,0 +1,207 @@
+package beamline.miners.behavioalconformance.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import org.processmining.models.graphbased.directed.transitionsystem.State;
+import org.processmining.models.graphbased.directed.transitionsystem.Transition;
+import org.processmining.models.graphbased.directed.transitionsystem.TransitionSystem;
+
+/**
+ * Shortest paths from a single state of a transition system to all the others. Since transitions are not
+ * weighted, the paths are the ones of the breadth-first search tree rooted in the source state, which is
+ * built in time and memory linear in the size of the transition system.
+ */
+public class ShortestPathTree {
+
+	private State source;
+	// for each reached state (but the source), the transition used to reach it
+	private Map<State, Transition> parentTransition = new HashMap<State, Transition>();
+	// number of relations on the path to each reached state, computed on first use
+	private Map<State, Integer> pathRelations = null;
+
+	/**
+	 * Builds the shortest paths from the given state
+	 * 
+	 * @param source the source of all paths
+	 */
+	public ShortestPathTree(State source) {
+		this.source = source;
+		if (source == null) {
+			return;
+		}
+		
+		TransitionSystem ts = source.getGraph();
+		Queue<State> queue = new ArrayDeque<State>();
+		queue.add(source);
+		while (!queue.isEmpty()) {
+			State s = queue.poll();
+			for (Transition t : ts.getOutEdges(s)) {
+				State target = t.getTarget();
+				if (!target.equals(source) && !parentTransition.containsKey(target)) {
+					parentTransition.put(target, t);
+					queue.add(target);
+				}
+			}
+		}
+	}
+	
+	public State getSource() {
+		return source;
+	}
+	
+	/**
+	 * Returns the transitions of a shortest path from the source to the given state
+	 * 
+	 * @param to the target state
+	 * @return the transitions of the path, in order, which is empty if the target is the source or is not
+	 * reachable
+	 */
+	public List<Transition> getPath(State to) {
+		if (!parentTransition.containsKey(to)) {
+			return Collections.emptyList();
+		}
+		LinkedList<Transition> path = new LinkedList<Transition>();
+		for (Transition t = parentTransition.get(to); t != null; t = parentTransition.get(t.getSource())) {
+			path.addFirst(t);
+		}
+		return path;
+	}
+	
+	/**
+	 * Returns the number of distinct direct following relations, among non silent transitions, observed
+	 * along the path from the source to the given state, i.e., the size of
+	 * {@link TSUtils#getShortestPath(ShortestPathTree, State)}. The counts of all states are computed
+	 * together, the first time this method is called.
+	 * 
+	 * @param to the target state
+	 * @return the number of relations, which is 0 if the target is the source or is not reachable
+	 */
+	public int getPathRelationsCount(State to) {
+		if (pathRelations == null) {
+			List<State> states = new ArrayList<State>(parentTransition.keySet());
+			Map<State, Integer> stateIds = new HashMap<State, Integer>();
+			stateIds.put(source, 0);
+			for (State s : states) {
+				stateIds.put(s, stateIds.size());
+			}
+			Map<String, Integer> labelIds = new HashMap<String, Integer>();
+			int[] parentState = new int[states.size() + 1];
+			int[] parentLabel = new int[states.size() + 1];
+			parentState[0] = -1;
+			parentLabel[0] = -1;
+			for (State s : states) {
+				Transition t = parentTransition.get(s);
+				int id = stateIds.get(s);
+				parentState[id] = stateIds.get(t.getSource());
+				parentLabel[id] = -1;
+				if (!TSUtils.isTransitionTau(t)) {
+					Integer label = labelIds.get(t.getLabel());
+					if (label == null) {
+						label = labelIds.size();
+						labelIds.put(t.getLabel(), label);
+					}
+					parentLabel[id] = label;
+				}
+			}
+			int[] counts = countPathRelations(parentState, parentLabel, labelIds.size());
+			Map<State, Integer> result = new HashMap<State, Integer>();
+			for (State s : states) {
+				result.put(s, counts[stateIds.get(s)]);
+			}
+			pathRelations = result;
+		}
+		Integer count = pathRelations.get(to);
+		return count == null ? 0 : count;
+	}
+	
+	/*
+	 * Counts the relations on the path from the root of a tree to each of its nodes, with a depth-first
+	 * visit of the tree that keeps the number of occurrences of each relation on the current path. The
+	 * tree is given by the parent of each node (-1 for the roots, which have no relations) and by the
+	 * label of the edge from the parent (-1 for silent edges).
+	 */
+	static int[] countPathRelations(int[] parentState, int[] parentLabel, int labels) {
+		int n = parentState.length;
+		int[] childrenStart = new int[n + 1];
+		for (int v = 0; v < n; v++) {
+			if (parentState[v] >= 0) {
+				childrenStart[parentState[v] + 1]++;
+			}
+		}
+		for (int v = 0; v < n; v++) {
+			childrenStart[v + 1] += childrenStart[v];
+		}
+		int[] children = new int[childrenStart[n]];
+		int[] next = Arrays.copyOf(childrenStart, n);
+		for (int v = 0; v < n; v++) {
+			if (parentState[v] >= 0) {
+				children[next[parentState[v]]++] = v;
+			}
+		}
+		
+		// relations are numbered as they are first met, and only the ones on the current path are counted
+		Map<Long, Integer> relationIds = new HashMap<Long, Integer>();
+		int[] occurrences = new int[n];
+		int[] lastLabel = new int[n];
+		int[] relationOf = new int[n];
+		int[] result = new int[n];
+		int distinct = 0;
+		
+		int[] stack = new int[n];
+		int[] nextChild = new int[n];
+		for (int root = 0; root < n; root++) {
+			if (parentState[root] >= 0) {
+				continue;
+			}
+			lastLabel[root] = -1;
+			relationOf[root] = -1;
+			int depth = 0;
+			stack[depth++] = root;
+			nextChild[root] = childrenStart[root];
+			while (depth > 0) {
+				int v = stack[depth - 1];
+				if (nextChild[v] < childrenStart[v + 1]) {
+					int child = children[nextChild[v]++];
+					relationOf[child] = -1;
+					lastLabel[child] = lastLabel[v];
+					if (parentLabel[child] >= 0) {
+						if (lastLabel[v] >= 0) {
+							long key = (long) lastLabel[v] * labels + parentLabel[child];
+							Integer relation = relationIds.get(key);
+							if (relation == null) {
+								relation = relationIds.size();
+								relationIds.put(key, relation);
+							}
+							relationOf[child] = relation;
+							if (occurrences[relation]++ == 0) {
+								distinct++;
+							}
+						}
+						lastLabel[child] = parentLabel[child];
+					}
+					result[child] = distinct;
+					nextChild[child] = childrenStart[child];
+					stack[depth++] = child;
+				} else {
+					depth--;
+					if (relationOf[v] >= 0 && --occurrences[relationOf[v]] == 0) {
+						distinct--;
+					}
+				}
+			}
+		}
+		return result;
+	}
+	
+	public boolean isReachable(State to) {
+		return to != null && (to.equals(source) || parentTransition.containsKey(to));
+	}
+}
@@ -0,0 +1,102 @@
+package beamline.miners.behavioalconformance.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits on the size of the state spaces built by {@link SafeReachabilityGraph} and {@link CGHelper}, so
+ * that nets with too much concurrency fail instead of exhausting the memory. The limits are checked
+ * while the graph is explored: when one is reached, the construction stops with an
+ * {@link ExceededException}.
+ */
+public class StateSpaceBudget {
+	
+	/**
+	 * The limits which can stop the construction of a graph
+	 */
+	public enum Limit {
+		STATES,
+		EDGES,
+		WALL_TIME
+	}
+	
+	/**
+	 * Thrown when the construction of a graph exceeds its budget
+	 */
+	public static class ExceededException extends RuntimeException {
+	
+		private static final long serialVersionUID = -2361437105588612034L;
+		private final Limit limit;
+		
+		public ExceededException(Limit limit, int states, int edges) {
+			super(limit + " limit exceeded after " + states + " states and " + edges + " edges");
+			this.limit = limit;
+		}
+		
+		public Limit getLimit() {
+			return limit;
+		}
+	}
+	
+	/**
+	 * Budget with no limits
+	 */
+	public static final StateSpaceBudget UNLIMITED = new StateSpaceBudget(Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	
+	private final int maxStates;
+	private final int maxEdges;
+	private final long maxWallTimeNanos;
+	
+	/**
+	 * Creates a new budget
+	 * 
+	 * @param maxStates the maximum number of states of the graph
+	 * @param maxEdges the maximum number of edges of the graph
+	 * @param maxWallTime the maximum wall time
+	 * @param unit the unit of <tt>maxWallTime</tt>
+	 */
+	public StateSpaceBudget(int maxStates, int maxEdges, long maxWallTime, TimeUnit unit) {
+		if (maxStates < 0 || maxEdges < 0 || maxWallTime < 0) {
+			throw new IllegalArgumentException("The limits of the budget must not be negative");
+		}
+		this.maxStates = maxStates;
+		this.maxEdges = maxEdges;
+		this.maxWallTimeNanos = unit.toNanos(maxWallTime);
+	}
+	
+	public int getMaxStates() {
+		return maxStates;
+	}
+	
+	public int getMaxEdges() {
+		return maxEdges;
+	}
+	
+	public long getMaxWallTimeNanos() {
+		return maxWallTimeNanos;
+	}
+	
+	/**
+	 * Checks the size of a graph being built
+	 * 
+	 * @param states the states discovered so far
+	 * @param edges the edges discovered so far
+	 * @param start the value of {@link System#nanoTime()} when the construction started
+	 * @throws ExceededException if any limit is exceeded
+	 */
+	void check(int states, int edges, long start) {
+		if (states > maxStates) {
+			throw new ExceededException(Limit.STATES, states, edges);
+		}
+		if (edges > maxEdges) {
+			throw new ExceededException(Limit.EDGES, states, edges);
+		}
+		if (maxWallTimeNanos != Long.MAX_VALUE && System.nanoTime() - start > maxWallTimeNanos) {
+			throw new ExceededException(Limit.WALL_TIME, states, edges);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return "max states: " + maxStates + ", max edges: " + maxEdges + ", max wall time: " + TimeUnit.NANOSECONDS.toMillis(maxWallTimeNanos) + " ms";
+	}
+}
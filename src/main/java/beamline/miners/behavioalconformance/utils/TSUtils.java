@@ -1,5 +1,7 @@
 package beamline.miners.behavioalconformance.utils;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -25,7 +27,17 @@ public class TSUtils {
 	 * @return <tt>true</tt> if the transition is silent, <tt>false</tt> otherwise
 	 */
 	public static boolean isTransitionTau(Transition transition) {
-		return transition == null || transition.getLabel().startsWith("tau ") || transition.getLabel().startsWith("silent_added") || transition.getLabel().isEmpty();
+		return transition == null || isLabelTau(transition.getLabel());
+	}
+	
+	/**
+	 * Checks if the given label is the label of a silent transition
+	 * 
+	 * @param label
+	 * @return <tt>true</tt> if the label is silent, <tt>false</tt> otherwise
+	 */
+	public static boolean isLabelTau(String label) {
+		return label.startsWith("tau ") || label.startsWith("silent_added") || label.isEmpty();
 	}
 	
 	/**
@@ -46,7 +58,7 @@ public class TSUtils {
 	}
 	
 	public static List<DirectFollowingRelation> getShortestPath(ShortestPathInfo<State, Transition> calculator, State from, State to) {
-		List<DirectFollowingRelation> result = new LinkedList<DirectFollowingRelation>();
+		Set<DirectFollowingRelation> result = new LinkedHashSet<DirectFollowingRelation>();
 		State prev = null;
 		Transition prevTransition = null;
 		for (State s : calculator.getShortestPath(from, to)) {
@@ -55,20 +67,73 @@ public class TSUtils {
 				if (t != null && !TSUtils.isTransitionTau(t)) {
 					if (prevTransition != null) {
 						DirectFollowingRelation newRel = new DirectFollowingRelation(prevTransition.getLabel(), t.getLabel());
-						if (!result.contains(newRel)) {
-							result.add(newRel);
-						}
+						result.add(newRel);
 					}
 					prevTransition = t;
 				}
 			}
 			prev = s;
 		}
-		return result;
+		return new ArrayList<DirectFollowingRelation>(result);
+	}
+	
+	/**
+	 * Returns the direct following relations, among non silent transitions, observed along the shortest
+	 * path from the source of the tree to the given state. Each relation is reported once.
+	 * 
+	 * @param tree the shortest paths from the source state
+	 * @param to the target state
+	 * @return the relations, in order of first occurrence
+	 */
+	public static List<DirectFollowingRelation> getShortestPath(ShortestPathTree tree, State to) {
+		Set<DirectFollowingRelation> result = new LinkedHashSet<DirectFollowingRelation>();
+		Transition prevTransition = null;
+		for (Transition t : tree.getPath(to)) {
+			if (!TSUtils.isTransitionTau(t)) {
+				if (prevTransition != null) {
+					DirectFollowingRelation newRel = new DirectFollowingRelation(prevTransition.getLabel(), t.getLabel());
+					result.add(newRel);
+				}
+				prevTransition = t;
+			}
+		}
+		return new ArrayList<DirectFollowingRelation>(result);
+	}
+	
+	/**
+	 * Returns the direct following relations, among non silent edges, observed along the shortest path
+	 * from the source of the tree to the given state. Each relation is reported once.
+	 * 
+	 * @param graph the reachability graph
+	 * @param tree the shortest paths from the source state, see
+	 * {@link SafeReachabilityGraph#getShortestPathTree(int)}
+	 * @param to the target state
+	 * @return the relations, in order of first occurrence
+	 */
+	public static List<DirectFollowingRelation> getShortestPath(SafeReachabilityGraph graph, int[] tree, int to) {
+		LinkedList<Integer> path = new LinkedList<Integer>();
+		for (int e = tree[to]; e != -1; e = tree[graph.getSource(e)]) {
+			path.addFirst(e);
+		}
+		Set<DirectFollowingRelation> result = new LinkedHashSet<DirectFollowingRelation>();
+		String prevLabel = null;
+		for (int e : path) {
+			if (!graph.isTau(e)) {
+				if (prevLabel != null) {
+					DirectFollowingRelation newRel = new DirectFollowingRelation(prevLabel, graph.getLabel(e));
+					result.add(newRel);
+				}
+				prevLabel = graph.getLabel(e);
+			}
+		}
+		return new ArrayList<DirectFollowingRelation>(result);
 	}
 	
 	public static String getTransitionLabel(Transition t) {
-		String label = t.getLabel();
+		return getTransitionLabel(t.getLabel());
+	}
+	
+	public static String getTransitionLabel(String label) {
 		if (label.matches("(.*)_copy_\\d+")) {
 			label = label.replaceAll("(.*)_copy_\\d+", "$1");
 		}
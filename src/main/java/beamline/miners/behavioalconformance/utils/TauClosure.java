@@ -0,0 +1,187 @@
+package beamline.miners.behavioalconformance.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.processmining.models.graphbased.directed.transitionsystem.State;
+import org.processmining.models.graphbased.directed.transitionsystem.Transition;
+import org.processmining.models.graphbased.directed.transitionsystem.TransitionSystem;
+
+/**
+ * For each state of a transition system, the non silent transitions that can be reached going backward
+ * (incoming) or forward (outgoing) only through silent transitions, as computed by
+ * {@link TSUtils#getIncomingNonTau(State, Set)} and {@link TSUtils#getOutgoingNonTau(State, Set)}. The
+ * closure is computed once for the whole transition system: states connected by cycles of silent
+ * transitions reach the same transitions, so they are collapsed into their strongly connected component,
+ * and the components are then visited in topological order, each one in time proportional to its edges.
+ */
+public class TauClosure {
+
+	private Map<State, Integer> stateIds = new HashMap<State, Integer>();
+	private int[] componentOf;
+	private List<Set<Transition>> incoming = new ArrayList<Set<Transition>>();
+	private List<Set<Transition>> outgoing = new ArrayList<Set<Transition>>();
+
+	/**
+	 * Computes the closure of all states of the given transition system
+	 * 
+	 * @param ts the transition system
+	 */
+	public TauClosure(TransitionSystem ts) {
+		List<State> states = new ArrayList<State>(ts.getNodes());
+		for (int i = 0; i < states.size(); i++) {
+			stateIds.put(states.get(i), i);
+		}
+		
+		// silent transitions, as adjacency lists in compressed form
+		int[] tauStart = new int[states.size() + 1];
+		List<Integer> tauTargets = new ArrayList<Integer>();
+		for (int i = 0; i < states.size(); i++) {
+			for (Transition t : ts.getOutEdges(states.get(i))) {
+				if (TSUtils.isTransitionTau(t)) {
+					tauTargets.add(stateIds.get(t.getTarget()));
+				}
+			}
+			tauStart[i + 1] = tauTargets.size();
+		}
+		int[] tauTarget = new int[tauTargets.size()];
+		for (int i = 0; i < tauTarget.length; i++) {
+			tauTarget[i] = tauTargets.get(i);
+		}
+		
+		componentOf = computeComponents(tauStart, tauTarget);
+		int components = 0;
+		for (int c : componentOf) {
+			components = Math.max(components, c + 1);
+		}
+		List<List<Integer>> members = new ArrayList<List<Integer>>();
+		for (int c = 0; c < components; c++) {
+			members.add(new ArrayList<Integer>());
+			incoming.add(new HashSet<Transition>());
+			outgoing.add(new HashSet<Transition>());
+		}
+		for (int i = 0; i < states.size(); i++) {
+			members.get(componentOf[i]).add(i);
+		}
+		
+		// components are numbered in reverse topological order: the ones reached through silent
+		// transitions come first, so outgoing transitions are collected in increasing order
+		for (int c = 0; c < components; c++) {
+			Set<Transition> out = outgoing.get(c);
+			for (int i : members.get(c)) {
+				for (Transition t : ts.getOutEdges(states.get(i))) {
+					if (!TSUtils.isTransitionTau(t)) {
+						out.add(t);
+					} else if (componentOf[stateIds.get(t.getTarget())] != c) {
+						out.addAll(outgoing.get(componentOf[stateIds.get(t.getTarget())]));
+					}
+				}
+			}
+		}
+		// ... and incoming transitions in decreasing order
+		for (int c = components - 1; c >= 0; c--) {
+			Set<Transition> in = incoming.get(c);
+			for (int i : members.get(c)) {
+				for (Transition t : ts.getInEdges(states.get(i))) {
+					if (!TSUtils.isTransitionTau(t)) {
+						in.add(t);
+					} else if (componentOf[stateIds.get(t.getSource())] != c) {
+						in.addAll(incoming.get(componentOf[stateIds.get(t.getSource())]));
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the non silent transitions reaching the given state, possibly through silent ones. The
+	 * returned set is shared and must not be modified.
+	 * 
+	 * @param s the state
+	 * @return the transitions
+	 */
+	public Set<Transition> getIncomingNonTau(State s) {
+		return incoming.get(componentOf[stateIds.get(s)]);
+	}
+	
+	/**
+	 * Returns the non silent transitions leaving the given state, possibly after silent ones. The returned
+	 * set is shared and must not be modified.
+	 * 
+	 * @param s the state
+	 * @return the transitions
+	 */
+	public Set<Transition> getOutgoingNonTau(State s) {
+		return outgoing.get(componentOf[stateIds.get(s)]);
+	}
+	
+	/*
+	 * Tarjan's algorithm, without recursion so that long chains of silent transitions do not overflow the
+	 * stack. The graph is given as adjacency lists in compressed form (the successors of node i are
+	 * target[start[i]] ... target[start[i + 1] - 1]). Returns the component of each node: components are
+	 * numbered in the order they are completed, i.e., in reverse topological order.
+	 */
+	static int[] computeComponents(int[] start, int[] target) {
+		int n = start.length - 1;
+		int[] componentOf = new int[n];
+		int[] index = new int[n];
+		int[] lowLink = new int[n];
+		int[] nextEdge = new int[n];
+		boolean[] onStack = new boolean[n];
+		int[] stack = new int[n];
+		int[] callStack = new int[n];
+		Arrays.fill(index, -1);
+		int stackSize = 0;
+		int nextIndex = 0;
+		int components = 0;
+		
+		for (int root = 0; root < n; root++) {
+			if (index[root] != -1) {
+				continue;
+			}
+			int depth = 0;
+			callStack[depth++] = root;
+			index[root] = lowLink[root] = nextIndex++;
+			nextEdge[root] = start[root];
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			
+			while (depth > 0) {
+				int v = callStack[depth - 1];
+				if (nextEdge[v] < start[v + 1]) {
+					int w = target[nextEdge[v]++];
+					if (index[w] == -1) {
+						index[w] = lowLink[w] = nextIndex++;
+						nextEdge[w] = start[w];
+						stack[stackSize++] = w;
+						onStack[w] = true;
+						callStack[depth++] = w;
+					} else if (onStack[w]) {
+						lowLink[v] = Math.min(lowLink[v], index[w]);
+					}
+				} else {
+					depth--;
+					if (lowLink[v] == index[v]) {
+						int w;
+						do {
+							w = stack[--stackSize];
+							onStack[w] = false;
+							componentOf[w] = components;
+						} while (w != v);
+						components++;
+					}
+					if (depth > 0) {
+						int parent = callStack[depth - 1];
+						lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+					}
+				}
+			}
+		}
+		return componentOf;
+	}
+}
@@ -0,0 +1,198 @@
+package beamline.miners.behavioalconformance.utils;
+
+import java.io.Serializable;
+
+/**
+ * Hierarchical timing wheel, used to expire objects after a deadline without scanning all of them.
+ * Scheduling, rescheduling and cancelling a timer take constant time, while advancing the time costs one
+ * step per elapsed tick plus the number of timers that expire or move to a finer wheel.
+ * 
+ * <p>
+ * The wheel has {@link #LEVELS} levels of {@link #SLOTS} slots each: a slot of the first level spans one
+ * tick, a slot of level <tt>k</tt> spans <tt>SLOTS^k</tt> ticks. Timers are moved to lower levels as
+ * their deadline gets closer. Time is expressed in arbitrary units (e.g., milliseconds of event time or of
+ * processing time) and only moves forward: calls to {@link #advance(long, ExpirationHandler)} with an
+ * older time are ignored.
+ * @param <T> the type of the objects associated to the timers
+ */
+public class TimingWheel<T> implements Serializable {
+
+	private static final long serialVersionUID = -4107530180226386541L;
+	private static final int SLOT_BITS = 6;
+	public static final int SLOTS = 1 << SLOT_BITS;
+	public static final int LEVELS = 4;
+	private static final long NOT_STARTED = Long.MIN_VALUE;
+
+	/**
+	 * A timer, which can be scheduled on at most one wheel at a time
+	 * 
+	 * @param <T> the type of the associated object
+	 */
+	public static class Timer<T> implements Serializable {
+
+		private static final long serialVersionUID = 2936541004871338390L;
+		private T value;
+		private long deadline;
+		private Timer<T> prev = null;
+		private Timer<T> next = null;
+		
+		public Timer(T value) {
+			this.value = value;
+		}
+		
+		public T getValue() {
+			return value;
+		}
+		
+		public long getDeadline() {
+			return deadline;
+		}
+		
+		public boolean isScheduled() {
+			return next != null;
+		}
+		
+		private void unlink() {
+			prev.next = next;
+			next.prev = prev;
+			prev = null;
+			next = null;
+		}
+	}
+	
+	/**
+	 * Callback invoked for every expired timer
+	 * 
+	 * @param <T> the type of the objects associated to the timers
+	 */
+	public interface ExpirationHandler<T> {
+		public void expired(Timer<T> timer);
+	}
+	
+	private long tickDuration;
+	private long currentTick = NOT_STARTED;
+	private int scheduled = 0;
+	private Timer<T>[][] wheels;
+
+	/**
+	 * Creates a new timing wheel
+	 * 
+	 * @param tickDuration the resolution of the wheel: timers expire within one tick after their deadline
+	 */
+	@SuppressWarnings("unchecked")
+	public TimingWheel(long tickDuration) {
+		if (tickDuration <= 0) {
+			throw new IllegalArgumentException("The tick duration must be positive");
+		}
+		this.tickDuration = tickDuration;
+		this.wheels = new Timer[LEVELS][SLOTS];
+		for (int level = 0; level < LEVELS; level++) {
+			for (int slot = 0; slot < SLOTS; slot++) {
+				// each slot is a circular list with a sentinel head
+				Timer<T> head = new Timer<T>(null);
+				head.prev = head;
+				head.next = head;
+				wheels[level][slot] = head;
+			}
+		}
+	}
+	
+	/**
+	 * Schedules (or reschedules) the given timer
+	 * 
+	 * @param timer the timer
+	 * @param deadline the time after which the timer expires
+	 */
+	public void schedule(Timer<T> timer, long deadline) {
+		if (timer.isScheduled()) {
+			timer.unlink();
+		} else {
+			scheduled++;
+		}
+		timer.deadline = deadline;
+		if (currentTick == NOT_STARTED) {
+			currentTick = deadline / tickDuration - 1;
+		}
+		// the slot of the current tick has already been processed
+		insert(timer, currentTick + 1);
+	}
+	
+	/**
+	 * Removes the given timer from the wheel, if scheduled
+	 * 
+	 * @param timer the timer
+	 */
+	public void cancel(Timer<T> timer) {
+		if (timer.isScheduled()) {
+			timer.unlink();
+			scheduled--;
+		}
+	}
+	
+	/**
+	 * Moves the time of the wheel forward, invoking the handler on all timers whose deadline has passed
+	 * 
+	 * @param now the new time
+	 * @param handler the callback for the expired timers
+	 */
+	public void advance(long now, ExpirationHandler<T> handler) {
+		long targetTick = now / tickDuration;
+		if (currentTick == NOT_STARTED || scheduled == 0) {
+			// nothing to expire, just move to the new time
+			if (currentTick == NOT_STARTED || targetTick > currentTick) {
+				currentTick = targetTick;
+			}
+			return;
+		}
+		while (currentTick < targetTick && scheduled > 0) {
+			currentTick++;
+			
+			// move timers of coarser levels whose slot starts now to finer levels
+			for (int level = 1; level < LEVELS; level++) {
+				if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+					break;
+				}
+				Timer<T> head = wheels[level][(int) (currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1)];
+				while (head.next != head) {
+					Timer<T> timer = head.next;
+					timer.unlink();
+					insert(timer, currentTick);
+				}
+			}
+			
+			// expire the timers of the current tick
+			Timer<T> head = wheels[0][(int) currentTick & (SLOTS - 1)];
+			while (head.next != head) {
+				Timer<T> timer = head.next;
+				timer.unlink();
+				scheduled--;
+				handler.expired(timer);
+			}
+		}
+		if (currentTick < targetTick) {
+			currentTick = targetTick;
+		}
+	}
+	
+	public int size() {
+		return scheduled;
+	}
+	
+	private void insert(Timer<T> timer, long minTick) {
+		long deadlineTick = Math.max(timer.deadline / tickDuration, minTick);
+		long delta = deadlineTick - currentTick;
+		int level = 0;
+		while (level < LEVELS - 1 && delta >= (1L << (SLOT_BITS * (level + 1)))) {
+			level++;
+		}
+		if (delta >= (1L << (SLOT_BITS * LEVELS))) {
+			// beyond the range of the wheel: park the timer in the farthest slot, it will be moved again
+			deadlineTick = currentTick + (1L << (SLOT_BITS * LEVELS)) - 1;
+		}
+		Timer<T> head = wheels[level][(int) (deadlineTick >>> (SLOT_BITS * level)) & (SLOTS - 1)];
+		timer.prev = head.prev;
+		timer.next = head;
+		head.prev.next = timer;
+		head.prev = timer;
+	}
+}
@@ -0,0 +1,148 @@
+package org.processmining.unfolder;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.semantics.petrinet.Marking;
+
+/**
+ * Writes Petri nets as PNML documents. Elements are streamed to the output as they are visited, so,
+ * differently from {@link org.processmining.plugins.pnml.base.Pnml}, the document is never built in
+ * memory. Only the elements read by {@link andbur.au.qut.pnml.PNMLReader} are written: names, initial
+ * markings and arcs, but no layout.
+ */
+public class PnmlWriter {
+
+	private static final String NET_TYPE = "http://www.pnml.org/version-2009/grammar/pnmlcoremodel";
+	private static final XMLOutputFactory FACTORY = XMLOutputFactory.newInstance();
+
+	private PnmlWriter() { }
+
+	/**
+	 * Writes the given net into the given file. If writing fails, the file is deleted.
+	 * 
+	 * @param net the net
+	 * @param marking the initial marking
+	 * @param file the target file
+	 * @throws IOException
+	 */
+	public static void write(Petrinet net, Marking marking, File file) throws IOException {
+		boolean written = false;
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+			write(net, marking, out);
+			written = true;
+		} finally {
+			if (!written) {
+				file.delete();
+			}
+		}
+	}
+	
+	/**
+	 * Writes the given net on the given stream, encoded in UTF-8. The stream is not closed.
+	 * 
+	 * @param net the net
+	 * @param marking the initial marking
+	 * @param out the stream
+	 * @throws IOException
+	 */
+	public static void write(Petrinet net, Marking marking, OutputStream out) throws IOException {
+		try {
+			XMLStreamWriter xml = FACTORY.createXMLStreamWriter(out, "UTF-8");
+			xml.writeStartDocument("UTF-8", "1.0");
+			newLine(xml, 0);
+			xml.writeStartElement("pnml");
+			newLine(xml, 1);
+			xml.writeStartElement("net");
+			xml.writeAttribute("id", "net1");
+			xml.writeAttribute("type", NET_TYPE);
+			writeName(xml, net.getLabel(), 2);
+			newLine(xml, 2);
+			xml.writeStartElement("page");
+			xml.writeAttribute("id", "n0");
+			
+			Map<PetrinetNode, String> ids = new IdentityHashMap<PetrinetNode, String>();
+			for (Place p : net.getPlaces()) {
+				String id = "n" + (ids.size() + 1);
+				ids.put(p, id);
+				newLine(xml, 3);
+				xml.writeStartElement("place");
+				xml.writeAttribute("id", id);
+				writeName(xml, p.getLabel(), 4);
+				int tokens = marking == null ? 0 : marking.occurrences(p);
+				if (tokens > 0) {
+					newLine(xml, 4);
+					xml.writeStartElement("initialMarking");
+					xml.writeStartElement("text");
+					xml.writeCharacters(Integer.toString(tokens));
+					xml.writeEndElement();
+					xml.writeEndElement();
+				}
+				newLine(xml, 3);
+				xml.writeEndElement();
+			}
+			for (Transition t : net.getTransitions()) {
+				String id = "n" + (ids.size() + 1);
+				ids.put(t, id);
+				newLine(xml, 3);
+				xml.writeStartElement("transition");
+				xml.writeAttribute("id", id);
+				writeName(xml, t.getLabel(), 4);
+				newLine(xml, 3);
+				xml.writeEndElement();
+			}
+			int arcs = 0;
+			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> e : net.getEdges()) {
+				newLine(xml, 3);
+				xml.writeEmptyElement("arc");
+				xml.writeAttribute("id", "arc" + (++arcs));
+				xml.writeAttribute("source", ids.get(e.getSource()));
+				xml.writeAttribute("target", ids.get(e.getTarget()));
+			}
+			
+			newLine(xml, 2);
+			xml.writeEndElement();
+			newLine(xml, 1);
+			xml.writeEndElement();
+			newLine(xml, 0);
+			xml.writeEndElement();
+			newLine(xml, 0);
+			xml.writeEndDocument();
+			xml.flush();
+			xml.close();
+		} catch (XMLStreamException e) {
+			throw new IOException("Error writing PNML", e);
+		}
+	}
+	
+	private static void writeName(XMLStreamWriter xml, String name, int depth) throws XMLStreamException {
+		newLine(xml, depth);
+		xml.writeStartElement("name");
+		xml.writeStartElement("text");
+		xml.writeCharacters(name);
+		xml.writeEndElement();
+		xml.writeEndElement();
+	}
+	
+	private static void newLine(XMLStreamWriter xml, int depth) throws XMLStreamException {
+		StringBuilder sb = new StringBuilder("\n");
+		for (int i = 0; i < depth; i++) {
+			sb.append('\t');
+		}
+		xml.writeCharacters(sb.toString());
+	}
+}
@@ -1,44 +1,39 @@
 package org.processmining.unfolder;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.PipedOutputStream;
 import java.io.PrintStream;
+import java.nio.file.Files;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-import org.processmining.models.connections.GraphLayoutConnection;
 import org.processmining.models.graphbased.directed.petrinet.Petrinet;
-import org.processmining.models.graphbased.directed.petrinet.PetrinetGraph;
 import org.processmining.models.graphbased.directed.petrinet.impl.PetrinetFactory;
 import org.processmining.models.semantics.petrinet.Marking;
-import org.processmining.plugins.pnml.base.Pnml;
 
-import andbur.au.qut.nets.unfolding.BPstructBP;
-import andbur.au.qut.nets.unfolding.Multiplicity;
 import andbur.au.qut.nets.unfolding.Unfolder_PetriNet;
 import andbur.au.qut.pnml.PNMLReader;
 import andbur.hub.top.petrinet.Arc;
-import andbur.hub.top.petrinet.Node;
 import andbur.hub.top.petrinet.PetriNet;
 import andbur.hub.top.petrinet.Place;
 import andbur.hub.top.petrinet.Transition;
 
-class CustomPrintStream extends PrintStream {
-	public CustomPrintStream(OutputStream out) {
-		super(out, true);
-	}
-}
-
 public class Unfolder {
 
+	private static final String USAGE = "Usage:\n" +
+			"  Unfolder <source PNML file> <target PNML file>\n" +
+			"  Unfolder --batch <directory or manifest> <target directory> [--timeout <seconds>] [--max-events <n>]\n" +
+			"           [--report <CSV file>]\n" +
+			"  The nets of a batch are unfolded one after another.";
+
 	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals("--batch")) {
+			System.exit(batch(args));
+		}
 		if (args.length != 2) {
 			System.err.println("Error. Please provide source and target PNML file paths as parameters.");
+			System.err.println(USAGE);
 			System.exit(-1);
 		}
 		String file = args[0];
@@ -46,33 +41,134 @@ public class Unfolder {
 //		String file = "C:\\Users\\andbur\\Desktop\\model.pnml";
 //		String target = file + "_unfolded";
 
-		PipedOutputStream pipeOut = new PipedOutputStream();
-		System.setOut(new PrintStream(pipeOut));
-
 		PetriNet net = PNMLReader.parse(new File(file));
-		write2File(unfold(net), target);
+		Petrinet unfolded = unfold(net);
+		PnmlWriter.write(unfolded, getInitialM(unfolded), new File(target));
 	}
 	
-	public static Petrinet unfold(PetriNet net) throws Exception {
-		HashSet<String> commonLabels = new HashSet<String>();
-		HashSet<String> silent = new HashSet<String>();
-		for (Transition t : net.getTransitions()) {
-			if (t.getName().startsWith("tau ") || t.getName().isEmpty() || t.getName() == null) {
-				silent.add(t.getName());
-			} else {
-				commonLabels.add(t.getName());
+	/*
+	 * Runs the batch mode, see UnfolderBatch, and returns the exit code: 0 if all nets have been unfolded
+	 */
+	private static int batch(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println(USAGE);
+			return -1;
+		}
+		File sources = new File(args[1]);
+		File targetDirectory = new File(args[2]);
+		long timeout = Long.MAX_VALUE;
+		int maxEvents = Integer.MAX_VALUE;
+		File reportFile = new File(targetDirectory, "report.csv");
+		for (int i = 3; i < args.length; i++) {
+			if (i + 1 >= args.length) {
+				System.err.println("Error. Missing value of " + args[i] + ".");
+				System.err.println(USAGE);
+				return -1;
+			}
+			try {
+				switch (args[i]) {
+				case "--timeout":
+					timeout = Long.parseLong(args[++i]);
+					break;
+				case "--max-events":
+					maxEvents = Integer.parseInt(args[++i]);
+					break;
+				case "--report":
+					reportFile = new File(args[++i]);
+					break;
+				default:
+					System.err.println("Error. Unknown option " + args[i] + ".");
+					System.err.println(USAGE);
+					return -1;
+				}
+			} catch (NumberFormatException e) {
+				System.err.println("Error. Invalid value " + args[i] + " of " + args[i - 1] + ".");
+				System.err.println(USAGE);
+				return -1;
 			}
 		}
 		
-		Unfolder_PetriNet unfolder = new Unfolder_PetriNet(net, BPstructBP.MODE.EQUAL_DFS, silent);
-		unfolder.computeUnfolding();
-
-		HashMap<Node, Multiplicity> repetitions = new HashMap<>();
-		PetriNet unfolded = unfolder.getUnfoldingAsPetriNet(commonLabels, repetitions, new HashMap<>());
-		return translateNet(unfolded);
+		UnfolderBatch batch;
+		try {
+			batch = new UnfolderBatch(new UnfoldingBudget(maxEvents, Long.MAX_VALUE, timeout, TimeUnit.SECONDS));
+		} catch (IllegalArgumentException e) {
+			System.err.println("Error. " + e.getMessage() + ".");
+			System.err.println(USAGE);
+			return -1;
+		}
+		List<File> files = UnfolderBatch.getSources(sources);
+		File baseDirectory = sources.isDirectory() ? sources : sources.getAbsoluteFile().getParentFile();
+		Files.createDirectories(targetDirectory.toPath());
+		File reportDirectory = reportFile.getAbsoluteFile().getParentFile();
+		if (reportDirectory != null) {
+			Files.createDirectories(reportDirectory.toPath());
+		}
+		
+		long start = System.nanoTime();
+		List<UnfolderBatch.Result> results;
+		try (PrintStream report = new PrintStream(new FileOutputStream(reportFile), false, "UTF-8")) {
+			results = batch.run(files, baseDirectory, targetDirectory, report);
+		}
+		
+		int unfolded = 0;
+		for (UnfolderBatch.Result r : results) {
+			if (r.getStatus() == UnfolderBatch.Status.UNFOLDED) {
+				unfolded++;
+			}
+		}
+		System.err.println("Unfolded " + unfolded + " of " + results.size() + " nets in " +
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms, report written to " + reportFile);
+		return unfolded == results.size() ? 0 : 1;
+	}
+	
+	/**
+	 * Computes the unfolding of the given net. The names of the nodes of the net are changed (see
+	 * {@link Unfolder_PetriNet}), so the same net must not be unfolded by several threads at once. This
+	 * method can be called concurrently on different nets, but the unfoldings are computed one at a time.
+	 * 
+	 * @param net the net to unfold
+	 * @return the unfolding
+	 * @throws Exception
+	 */
+	public static Petrinet unfold(PetriNet net) throws Exception {
+		return unfold(net, null);
+	}
+	
+	/**
+	 * Computes the unfolding of the given net, see {@link #unfold(PetriNet)}
+	 * 
+	 * @param net the net to unfold
+	 * @param statistics the object to fill with the size of the unfolding, or <tt>null</tt>
+	 * @return the unfolding
+	 * @throws Exception
+	 */
+	public static Petrinet unfold(PetriNet net, UnfoldingStatistics statistics) throws Exception {
+		return unfold(net, statistics, UnfoldingBudget.UNLIMITED, UnfoldingProgressListener.NONE);
 	}
 	
-	private static Marking getInitialM(Petrinet net) {
+	/**
+	 * Computes the unfolding of the given net within the given budget, see {@link #unfold(PetriNet)}. If
+	 * the budget runs out, the unfolding stops and the prefix computed so far is returned, while the
+	 * statistics report its size and the exceeded limit (see {@link UnfoldingStatistics#isComplete()}).
+	 * The budget is measured from when the unfolding starts, after waiting for the unfoldings requested
+	 * by other threads. Use {@link Unfolding} directly to extend the prefix later, or to skip its
+	 * conversion.
+	 * 
+	 * @param net the net to unfold
+	 * @param statistics the object to fill with the size of the unfolding and whether it is complete
+	 * @param budget the limits of the unfolding
+	 * @param progress the listener notified after each step of the unfolder
+	 * @return the unfolding, or its prefix if the budget ran out
+	 * @throws InterruptedException if the thread is interrupted while waiting or unfolding
+	 * @throws Exception
+	 */
+	public static Petrinet unfold(PetriNet net, UnfoldingStatistics statistics, UnfoldingBudget budget, UnfoldingProgressListener progress) throws Exception {
+		Unfolding unfolding = new Unfolding(net, statistics);
+		unfolding.extend(budget, progress);
+		return unfolding.getNet();
+	}
+	
+	static Marking getInitialM(Petrinet net) {
 		Marking m = new Marking();
 		for (org.processmining.models.graphbased.directed.petrinet.elements.Place p : net.getPlaces()) {
 			if (net.getInEdges(p).isEmpty()) {
@@ -82,23 +178,7 @@ public class Unfolder {
 		return m;
 	}
 
-	private static void write2File(Petrinet net, String file) throws Exception {
-		Marking marking = getInitialM(net);
-		
-		GraphLayoutConnection layout = new GraphLayoutConnection(net);
-		
-		Map<PetrinetGraph, Marking> markedNets = new HashMap<>();
-		markedNets.put(net, marking);
-		Pnml pnml = new Pnml().convertFromNet(markedNets, layout);
-		pnml.setType(Pnml.PnmlType.PNML);
-		String text = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n" + pnml.exportElement(pnml);
-		
-		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
-		bw.write(text);
-		bw.close();
-	}
-
-	private static Petrinet translateNet(PetriNet net) {
+	static Petrinet translateNet(PetriNet net) {
 		HashMap<Object, Object> map = new HashMap<>();
 		Petrinet newNet = PetrinetFactory.newPetrinet("name-of-net");
 
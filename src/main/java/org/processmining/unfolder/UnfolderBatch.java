@@ -0,0 +1,259 @@
+package org.processmining.unfolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+
+import andbur.au.qut.pnml.PNMLReader;
+import andbur.hub.top.petrinet.PetriNet;
+
+/**
+ * Unfolds many PNML files in the same JVM, so that the startup is paid once. Nets are read, unfolded and
+ * written one after another: the unfolder keeps static state (see {@link Unfolding}), so unfoldings
+ * cannot run in parallel, and each of them gets its whole budget. Each unfolding is bounded by an
+ * {@link UnfoldingBudget}: nets exceeding it are reported and not written, since their unfolding would be
+ * just a prefix.
+ */
+public class UnfolderBatch {
+
+	/**
+	 * The outcome of the unfolding of a net
+	 */
+	public enum Status {
+		UNFOLDED,
+		BUDGET_EXCEEDED,
+		FAILED
+	}
+	
+	/**
+	 * The report of the unfolding of a net
+	 */
+	public static class Result {
+		private final File source;
+		private final File target;
+		private Status status = Status.FAILED;
+		private UnfoldingStatistics statistics = new UnfoldingStatistics();
+		private int places = 0;
+		private int transitions = 0;
+		private int arcs = 0;
+		private long readNanos = 0;
+		private long writeNanos = 0;
+		private String error = "";
+		
+		Result(File source, File target) {
+			this.source = source;
+			this.target = target;
+		}
+		
+		public File getSource() {
+			return source;
+		}
+		
+		public File getTarget() {
+			return target;
+		}
+		
+		public Status getStatus() {
+			return status;
+		}
+		
+		public UnfoldingStatistics getStatistics() {
+			return statistics;
+		}
+		
+		public String getError() {
+			return error;
+		}
+		
+		/**
+		 * The columns of {@link #toCsv()}
+		 */
+		public static final String CSV_HEADER = "source,target,status,places,transitions,arcs,events,conditions,cut_off_events,read_ms,unfold_ms,write_ms,error";
+		
+		public String toCsv() {
+			return csv(source.getPath()) + "," + csv(target.getPath()) + "," + status + "," +
+					places + "," + transitions + "," + arcs + "," +
+					statistics.getEvents() + "," + statistics.getConditions() + "," + statistics.getCutOffEvents() + "," +
+					TimeUnit.NANOSECONDS.toMillis(readNanos) + "," +
+					TimeUnit.NANOSECONDS.toMillis(statistics.getWallTimeNanos()) + "," +
+					TimeUnit.NANOSECONDS.toMillis(writeNanos) + "," + csv(error);
+		}
+		
+		private static String csv(String value) {
+			if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+				return value;
+			}
+			return "\"" + value.replace("\"", "\"\"") + "\"";
+		}
+	}
+	
+	private final UnfoldingBudget budget;
+
+	/**
+	 * Creates a new batch
+	 * 
+	 * @param budget the budget of each unfolding
+	 */
+	public UnfolderBatch(UnfoldingBudget budget) {
+		this.budget = budget;
+	}
+	
+	/**
+	 * Returns the PNML files to unfold: all files with the <tt>.pnml</tt> extension in the given directory
+	 * and its subdirectories, or the files listed in the given manifest, one per line. Relative paths in a
+	 * manifest are resolved against its directory, while empty lines and lines starting with <tt>#</tt>
+	 * are skipped.
+	 * 
+	 * @param directoryOrManifest the directory or the manifest
+	 * @return the files, sorted by path for directories and in the order of the manifest otherwise
+	 * @throws IOException
+	 */
+	public static List<File> getSources(File directoryOrManifest) throws IOException {
+		if (directoryOrManifest.isDirectory()) {
+			try (Stream<Path> files = Files.walk(directoryOrManifest.toPath())) {
+				return files
+						.filter(p -> Files.isRegularFile(p) && p.getFileName().toString().toLowerCase().endsWith(".pnml"))
+						.sorted()
+						.map(Path::toFile)
+						.collect(Collectors.toList());
+			}
+		}
+		List<File> sources = new ArrayList<File>();
+		Path base = directoryOrManifest.getAbsoluteFile().toPath().getParent();
+		for (String line : Files.readAllLines(directoryOrManifest.toPath(), StandardCharsets.UTF_8)) {
+			line = line.trim();
+			if (!line.isEmpty() && !line.startsWith("#")) {
+				sources.add(base.resolve(line).toFile());
+			}
+		}
+		return sources;
+	}
+	
+	/**
+	 * The subdirectory of the target directory where the unfoldings of the nets outside of the base
+	 * directory are written, at their full path
+	 */
+	public static final String EXTERNAL_DIRECTORY = "external";
+	
+	/**
+	 * Unfolds all the given nets. The unfolding of each net is written in the target directory, at the
+	 * same path of the net relative to the base directory, with the <tt>_unfolded</tt> suffix. Nets outside
+	 * of the base directory are written under {@link #EXTERNAL_DIRECTORY}, at their full path (prefixed by
+	 * the name of their root on file systems with several roots). Nets with the same target as a previous
+	 * one, e.g., listed twice in a manifest, fail without being unfolded. Failures of single nets are
+	 * reported and do not stop the batch. The nets are unfolded in order, in the calling thread.
+	 * 
+	 * @param sources the nets to unfold
+	 * @param baseDirectory the directory of the sources
+	 * @param targetDirectory the directory of the unfoldings
+	 * @param report the stream where the report is written as CSV, one line per net as soon as it is
+	 * done, or <tt>null</tt>
+	 * @return the results, in the order of the sources
+	 * @throws InterruptedException if the thread is interrupted, the remaining nets are not unfolded
+	 */
+	public List<Result> run(List<File> sources, File baseDirectory, File targetDirectory, PrintStream report) throws InterruptedException {
+		Path base = baseDirectory.getAbsoluteFile().toPath().normalize();
+		List<Result> results = new ArrayList<Result>(sources.size());
+		Map<Path, File> targets = new HashMap<Path, File>();
+		if (report != null) {
+			report.println(Result.CSV_HEADER);
+		}
+		for (File source : sources) {
+			Path path = source.getAbsoluteFile().toPath().normalize();
+			Result result = new Result(source, new File(targetDirectory, getTargetName(getTargetPath(base, path).toString())));
+			results.add(result);
+			File previous = targets.putIfAbsent(result.target.getAbsoluteFile().toPath().normalize(), source);
+			if (previous != null) {
+				result.error = "same target of " + previous;
+			} else {
+				unfold(result);
+			}
+			if (report != null) {
+				report.println(result.toCsv());
+				report.flush();
+			}
+			if (Thread.currentThread().isInterrupted()) {
+				throw new InterruptedException("Batch interrupted after " + results.size() + " nets");
+			}
+		}
+		return results;
+	}
+	
+	private Result unfold(Result result) {
+		try {
+			long start = System.nanoTime();
+			PetriNet net = PNMLReader.parse(result.source);
+			result.readNanos = System.nanoTime() - start;
+			
+			// the prefix of a net over budget is not converted, since it is not written
+			Unfolding unfolding = new Unfolding(net, result.statistics);
+			unfolding.extend(budget, UnfoldingProgressListener.NONE);
+			if (!result.statistics.isComplete()) {
+				result.status = Status.BUDGET_EXCEEDED;
+				result.error = result.statistics.getExceededLimit() + " limit exceeded";
+				return result;
+			}
+			Petrinet unfolded = unfolding.getNet();
+			result.places = unfolded.getPlaces().size();
+			result.transitions = unfolded.getTransitions().size();
+			result.arcs = unfolded.getEdges().size();
+			
+			start = System.nanoTime();
+			File parent = result.target.getAbsoluteFile().getParentFile();
+			if (parent != null) {
+				Files.createDirectories(parent.toPath());
+			}
+			PnmlWriter.write(unfolded, Unfolder.getInitialM(unfolded), result.target);
+			result.writeNanos = System.nanoTime() - start;
+			result.status = Status.UNFOLDED;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			result.error = "interrupted";
+		} catch (Exception | StackOverflowError e) {
+			// errors of the single net, like stack overflows on pathological models
+			result.error = String.valueOf(e);
+		}
+		return result;
+	}
+	
+	/*
+	 * Returns the path of the unfolding of the given net, relative to the target directory and without
+	 * the suffix
+	 */
+	private static Path getTargetPath(Path base, Path source) {
+		if (source.startsWith(base)) {
+			return base.relativize(source);
+		}
+		Path external = Paths.get(EXTERNAL_DIRECTORY);
+		Path root = source.getRoot();
+		if (root == null) {
+			return external.resolve(source);
+		}
+		// e.g. "C:\" on Windows, while the root of Unix paths has no name
+		String rootName = root.toString().replaceAll("[^A-Za-z0-9]", "");
+		if (!rootName.isEmpty()) {
+			external = external.resolve(rootName);
+		}
+		return external.resolve(root.relativize(source));
+	}
+	
+	private static String getTargetName(String source) {
+		if (source.toLowerCase().endsWith(".pnml")) {
+			source = source.substring(0, source.length() - ".pnml".length());
+		}
+		return source + "_unfolded.pnml";
+	}
+}
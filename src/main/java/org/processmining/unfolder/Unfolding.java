@@ -0,0 +1,155 @@
+package org.processmining.unfolder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+
+import andbur.au.qut.nets.unfolding.BPstructBP;
+import andbur.au.qut.nets.unfolding.Multiplicity;
+import andbur.au.qut.nets.unfolding.Unfolder_PetriNet;
+import andbur.hub.top.petrinet.Node;
+import andbur.hub.top.petrinet.PetriNet;
+import andbur.hub.top.petrinet.Transition;
+import andbur.hub.top.uma.DNode;
+import andbur.hub.top.uma.DNodeSet;
+
+/**
+ * The branching process of a net, extended step by step within an {@link UnfoldingBudget}. When the
+ * budget runs out the branching process is kept, so it can be converted as a partial prefix (flagged by
+ * {@link UnfoldingStatistics#isComplete()}) or extended again with another budget. The names of the nodes
+ * of the net are changed (see {@link Unfolder_PetriNet}), so the same net must not be unfolded by several
+ * threads at once.
+ */
+public class Unfolding {
+	
+	// the uma library keeps static state while unfolding (e.g., the counter of the node ids), so
+	// unfoldings requested by different threads are computed one at a time. That state belongs to the
+	// AndburUnfolder dependency and cannot be made per instance here, hence the lock is process-wide.
+	private static final ReentrantLock UNFOLDING_LOCK = new ReentrantLock();
+	
+	private final PetriNet net;
+	private final UnfoldingStatistics statistics;
+	private final HashSet<String> commonLabels = new HashSet<String>();
+	private final HashSet<String> silent = new HashSet<String>();
+	private Unfolder_PetriNet unfolder = null;
+	private boolean finished = false;
+	
+	/**
+	 * Creates the unfolding of the given net, with no events yet
+	 * 
+	 * @param net the net to unfold
+	 * @param statistics the object to fill with the size of the unfolding and whether it is complete, or
+	 * <tt>null</tt>
+	 */
+	public Unfolding(PetriNet net, UnfoldingStatistics statistics) {
+		this.net = net;
+		this.statistics = statistics == null ? new UnfoldingStatistics() : statistics;
+		for (Transition t : net.getTransitions()) {
+			if (t.getName().startsWith("tau ") || t.getName().isEmpty() || t.getName() == null) {
+				silent.add(t.getName());
+			} else {
+				commonLabels.add(t.getName());
+			}
+		}
+	}
+	
+	public UnfoldingStatistics getStatistics() {
+		return statistics;
+	}
+	
+	/**
+	 * Extends the branching process until no more events can be added or the given budget runs out. The
+	 * budget is measured from when this unfolding gets its turn, so the time spent waiting for the
+	 * unfoldings of other threads is not counted. The events limit refers to the whole branching process,
+	 * while the allocations and the wall time refer to this extension only.
+	 * 
+	 * @param budget the limits of this extension
+	 * @param progress the listener notified after each step of the unfolder
+	 * @return the statistics of the unfolding, which is complete if no limit has been exceeded
+	 * @throws InterruptedException if the thread is interrupted while waiting or unfolding; the
+	 * branching process computed so far is kept
+	 */
+	public UnfoldingStatistics extend(UnfoldingBudget budget, UnfoldingProgressListener progress) throws InterruptedException {
+		UNFOLDING_LOCK.lockInterruptibly();
+		try {
+			long start = System.nanoTime();
+			long allocated = getAllocatedBytes();
+			statistics.setExceededLimit(null);
+			if (unfolder == null) {
+				unfolder = new Unfolder_PetriNet(net, BPstructBP.MODE.EQUAL_DFS, silent);
+			}
+			DNodeSet bp = unfolder.getBP().getBranchingProcess();
+			
+			try {
+				// extend the unfolding until no more events can be added or the budget runs out
+				int currentSteps;
+				while (!finished) {
+					UnfoldingBudget.Limit exceeded = budget.getExceededLimit(bp.getAllEvents().size(),
+							allocated < 0 ? -1 : getAllocatedBytes() - allocated, System.nanoTime() - start);
+					if (exceeded != null) {
+						statistics.setExceededLimit(exceeded);
+						break;
+					}
+					if ((currentSteps = unfolder.getBP().step()) <= 0) {
+						finished = true;
+						break;
+					}
+					statistics.setSteps(statistics.getSteps() + currentSteps);
+					statistics.setEvents(bp.getAllEvents().size());
+					statistics.setConditions(bp.getAllConditions().size());
+					progress.stepCompleted(statistics);
+					
+					if (Thread.interrupted()) {
+						throw new InterruptedException("Unfolding interrupted after " + statistics.getSteps() + " steps");
+					}
+				}
+			} finally {
+				int cutOffEvents = 0;
+				for (DNode e : bp.getAllEvents()) {
+					if (e.isCutOff) {
+						cutOffEvents++;
+					}
+				}
+				statistics.setEvents(bp.getAllEvents().size());
+				statistics.setConditions(bp.getAllConditions().size());
+				statistics.setCutOffEvents(cutOffEvents);
+				statistics.setWallTimeNanos(statistics.getWallTimeNanos() + System.nanoTime() - start);
+			}
+		} finally {
+			UNFOLDING_LOCK.unlock();
+		}
+		return statistics;
+	}
+	
+	/**
+	 * Converts the branching process computed so far, which is a partial prefix if the last extension
+	 * exceeded its budget (see {@link UnfoldingStatistics#isComplete()})
+	 * 
+	 * @return the unfolding, or its prefix
+	 * @throws InterruptedException if the thread is interrupted while waiting for other unfoldings
+	 */
+	public Petrinet getNet() throws InterruptedException {
+		UNFOLDING_LOCK.lockInterruptibly();
+		try {
+			if (unfolder == null) {
+				unfolder = new Unfolder_PetriNet(net, BPstructBP.MODE.EQUAL_DFS, silent);
+			}
+			HashMap<Node, Multiplicity> repetitions = new HashMap<>();
+			return Unfolder.translateNet(unfolder.getUnfoldingAsPetriNet(commonLabels, repetitions, new HashMap<>()));
+		} finally {
+			UNFOLDING_LOCK.unlock();
+		}
+	}
+	
+	private static long getAllocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+}
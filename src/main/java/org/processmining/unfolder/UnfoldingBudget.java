@@ -0,0 +1,89 @@
+package org.processmining.unfolder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits on the resources spent computing an unfolding. The limits are checked after each step of the
+ * unfolder, so each of them can be exceeded by the size of one step. When a limit is reached, the
+ * unfolding stops and its prefix is flagged as partial (see {@link UnfoldingStatistics#isComplete()}).
+ * The wall time and the allocations are measured from when the unfolding starts, so the time spent
+ * waiting for the unfoldings of other threads is not counted.
+ */
+public class UnfoldingBudget {
+
+	/**
+	 * The limits which can stop an unfolding
+	 */
+	public enum Limit {
+		EVENTS,
+		ALLOCATION,
+		WALL_TIME
+	}
+	
+	/**
+	 * Budget with no limits
+	 */
+	public static final UnfoldingBudget UNLIMITED = new UnfoldingBudget(Integer.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+	private final int maxEvents;
+	private final long maxAllocatedBytes;
+	private final long maxWallTimeNanos;
+
+	/**
+	 * Creates a new budget
+	 * 
+	 * @param maxEvents the maximum number of events of the branching process
+	 * @param maxAllocatedBytes the maximum number of bytes allocated by the thread computing the
+	 * unfolding. This counts all the allocations, including the garbage already collected, so it is not a
+	 * limit on the memory retained by the unfolding (which grows with its events). Ignored if the JVM does
+	 * not measure allocations.
+	 * @param maxWallTime the maximum wall time, excluding the time spent waiting for other unfoldings
+	 * @param unit the unit of <tt>maxWallTime</tt>
+	 */
+	public UnfoldingBudget(int maxEvents, long maxAllocatedBytes, long maxWallTime, TimeUnit unit) {
+		if (maxEvents < 0 || maxAllocatedBytes < 0 || maxWallTime < 0) {
+			throw new IllegalArgumentException("The limits of the budget must not be negative");
+		}
+		this.maxEvents = maxEvents;
+		this.maxAllocatedBytes = maxAllocatedBytes;
+		this.maxWallTimeNanos = unit.toNanos(maxWallTime);
+	}
+	
+	public int getMaxEvents() {
+		return maxEvents;
+	}
+	
+	public long getMaxAllocatedBytes() {
+		return maxAllocatedBytes;
+	}
+	
+	public long getMaxWallTimeNanos() {
+		return maxWallTimeNanos;
+	}
+	
+	/**
+	 * Returns the first limit exceeded by an unfolding
+	 * 
+	 * @param events the events of the branching process
+	 * @param allocatedBytes the bytes allocated so far, or <tt>-1</tt> if not measured
+	 * @param wallTimeNanos the wall time spent so far
+	 * @return the exceeded limit, or <tt>null</tt> if the unfolding is within the budget
+	 */
+	Limit getExceededLimit(int events, long allocatedBytes, long wallTimeNanos) {
+		if (events > maxEvents) {
+			return Limit.EVENTS;
+		}
+		if (allocatedBytes > maxAllocatedBytes) {
+			return Limit.ALLOCATION;
+		}
+		if (wallTimeNanos > maxWallTimeNanos) {
+			return Limit.WALL_TIME;
+		}
+		return null;
+	}
+	
+	@Override
+	public String toString() {
+		return "max events: " + maxEvents + ", max allocated bytes: " + maxAllocatedBytes + ", max wall time: " + TimeUnit.NANOSECONDS.toMillis(maxWallTimeNanos) + " ms";
+	}
+}
@@ -0,0 +1,22 @@
+package org.processmining.unfolder;
+
+/**
+ * Receives the progress of an unfolding, see
+ * {@link Unfolder#unfold(andbur.hub.top.petrinet.PetriNet, UnfoldingStatistics, UnfoldingBudget, UnfoldingProgressListener)}
+ */
+@FunctionalInterface
+public interface UnfoldingProgressListener {
+
+	/**
+	 * Listener which ignores all notifications
+	 */
+	UnfoldingProgressListener NONE = statistics -> { };
+
+	/**
+	 * Called after each step of the unfolder, from the thread computing the unfolding
+	 * 
+	 * @param statistics the size of the branching process so far (cut-off events are counted only at the
+	 * end of the unfolding)
+	 */
+	void stepCompleted(UnfoldingStatistics statistics);
+}
@@ -0,0 +1,95 @@
+package org.processmining.unfolder;
+
+/**
+ * Size of an unfolding computed by {@link Unfolder#unfold(andbur.hub.top.petrinet.PetriNet, UnfoldingStatistics)}
+ * or extended by {@link Unfolding#extend(UnfoldingBudget, UnfoldingProgressListener)}
+ */
+public class UnfoldingStatistics {
+
+	private int steps = 0;
+	private int events = 0;
+	private int conditions = 0;
+	private int cutOffEvents = 0;
+	private long wallTimeNanos = 0;
+	private UnfoldingBudget.Limit exceededLimit = null;
+
+	/**
+	 * Returns the number of events added to the branching process by the unfolding steps
+	 * 
+	 * @return the number of events added
+	 */
+	public int getSteps() {
+		return steps;
+	}
+	
+	public int getEvents() {
+		return events;
+	}
+	
+	public int getConditions() {
+		return conditions;
+	}
+	
+	public int getCutOffEvents() {
+		return cutOffEvents;
+	}
+	
+	/**
+	 * Returns the wall time spent computing the unfolding, over all its extensions, excluding the time
+	 * spent waiting for the unfoldings requested by other threads
+	 * 
+	 * @return the wall time, in nanoseconds
+	 */
+	public long getWallTimeNanos() {
+		return wallTimeNanos;
+	}
+	
+	/**
+	 * Returns whether the unfolding is complete or is a prefix cut by its {@link UnfoldingBudget}, which
+	 * can still be extended
+	 * 
+	 * @return <tt>true</tt> if the unfolding is complete
+	 */
+	public boolean isComplete() {
+		return exceededLimit == null;
+	}
+	
+	/**
+	 * Returns the limit of the budget which stopped the unfolding
+	 * 
+	 * @return the exceeded limit, or <tt>null</tt> if the unfolding is complete
+	 */
+	public UnfoldingBudget.Limit getExceededLimit() {
+		return exceededLimit;
+	}
+	
+	void setSteps(int steps) {
+		this.steps = steps;
+	}
+	
+	void setEvents(int events) {
+		this.events = events;
+	}
+	
+	void setConditions(int conditions) {
+		this.conditions = conditions;
+	}
+	
+	void setCutOffEvents(int cutOffEvents) {
+		this.cutOffEvents = cutOffEvents;
+	}
+	
+	void setWallTimeNanos(long wallTimeNanos) {
+		this.wallTimeNanos = wallTimeNanos;
+	}
+	
+	void setExceededLimit(UnfoldingBudget.Limit exceededLimit) {
+		this.exceededLimit = exceededLimit;
+	}
+	
+	@Override
+	public String toString() {
+		return "events: " + events + ", conditions: " + conditions + ", cut-off events: " + cutOffEvents + ", steps: " + steps +
+				(exceededLimit == null ? "" : " (partial, " + exceededLimit + " limit exceeded)");
+	}
+}
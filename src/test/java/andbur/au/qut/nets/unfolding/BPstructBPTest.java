@@ -0,0 +1,173 @@
+package andbur.au.qut.nets.unfolding;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.processmining.framework.util.Pair;
+
+import andbur.hub.top.petrinet.PetriNet;
+import andbur.hub.top.petrinet.Place;
+import andbur.hub.top.petrinet.Transition;
+import andbur.hub.top.uma.DNode;
+import andbur.hub.top.uma.DNodeBP;
+import andbur.hub.top.uma.Options;
+
+public class BPstructBPTest {
+	
+	@Test
+	public void localDirectlyFollowsOfDiamond() {
+		// i -> split -> (p1 -> a -> p3 || p2 -> b -> p4) -> join -> o
+		PetriNet net = new PetriNet();
+		Place i = net.addPlace("i");
+		Place p1 = net.addPlace("p1");
+		Place p2 = net.addPlace("p2");
+		Place p3 = net.addPlace("p3");
+		Place p4 = net.addPlace("p4");
+		Place o = net.addPlace("o");
+		Transition split = net.addTransition("split");
+		Transition a = net.addTransition("a");
+		Transition b = net.addTransition("b");
+		Transition join = net.addTransition("join");
+		net.setTokens(i, 1);
+		net.addArc(i, split);
+		net.addArc(split, p1);
+		net.addArc(split, p2);
+		net.addArc(p1, a);
+		net.addArc(a, p3);
+		net.addArc(p2, b);
+		net.addArc(b, p4);
+		net.addArc(p3, join);
+		net.addArc(p4, join);
+		net.addArc(join, o);
+		
+		Unfolder_PetriNet unfolder = new Unfolder_PetriNet(net, BPstructBP.MODE.EQUAL_DFS, new HashSet<String>());
+		BPstructBP bp = unfolder.getBP();
+		while (bp.step() > 0) { }
+		
+		// the join is the only event with two conditions in its preset
+		DNode joinEvent = null;
+		for (DNode e : bp.getBranchingProcess().getAllEvents()) {
+			if (e.pre.length == 2) {
+				joinEvent = e;
+			}
+		}
+		DNode aEvent = joinEvent.pre[0].pre[0];
+		DNode bEvent = joinEvent.pre[1].pre[0];
+		
+		// no causal past is known yet, so the concurrent events are indexed while visiting each other
+		Set<String> pairs = new HashSet<String>();
+		for (Pair<DNode, DNode> pair : bp.getLocalDFS(joinEvent)) {
+			pairs.add(pair.getFirst().globalId + ">" + pair.getSecond().globalId);
+		}
+		assertTrue(pairs.contains(aEvent.globalId + ">" + bEvent.globalId));
+		assertTrue(pairs.contains(bEvent.globalId + ">" + aEvent.globalId));
+		assertEquals(4, bp.getLocalConfig(joinEvent).size());
+		assertEquals(2, bp.getLocalConfig(aEvent).size());
+	}
+	
+	@Test
+	public void sameUnfoldingOfSequence() throws Exception {
+		assertSameUnfolding(new String[] { "a", "b" }, new int[][] { { 0, 0, 1 }, { 1, 1, 2 } }, 3);
+	}
+	
+	@Test
+	public void sameUnfoldingOfChoice() throws Exception {
+		assertSameUnfolding(new String[] { "a", "b", "c" }, new int[][] { { 0, 0, 1 }, { 0, 1, 1 }, { 1, 2, 2 } }, 3);
+	}
+	
+	@Test
+	public void sameUnfoldingOfConcurrency() throws Exception {
+		assertSameUnfolding(new String[] { "a", "b", "c", "d" }, new int[][] { { 0, 0, 1 }, { 0, 0, 2 }, { 1, 1, 3 },
+				{ 2, 2, 4 }, { 3, 3, 5 }, { 4, 3, 5 } }, 6);
+	}
+	
+	@Test
+	public void sameUnfoldingOfLoop() throws Exception {
+		assertSameUnfolding(new String[] { "a", "b", "c" }, new int[][] { { 0, 0, 1 }, { 1, 1, 0 }, { 1, 2, 2 } }, 3);
+	}
+	
+	@Test
+	public void sameUnfoldingOfTauCycle() throws Exception {
+		assertSameUnfolding(new String[] { "a", "tau 1", "tau 2", "b" }, new int[][] { { 0, 0, 1 }, { 1, 1, 2 },
+				{ 2, 2, 1 }, { 2, 3, 3 } }, 4);
+	}
+	
+	@Test
+	public void sameUnfoldingOfConcurrentLoops() throws Exception {
+		// two loops in parallel, so that the same cuts are reached by several configurations
+		assertSameUnfolding(new String[] { "a", "b", "c", "d", "e", "f" }, new int[][] { { 0, 0, 1 }, { 0, 0, 2 },
+				{ 1, 1, 3 }, { 3, 2, 1 }, { 2, 3, 4 }, { 4, 4, 2 }, { 3, 5, 5 }, { 4, 5, 5 } }, 6);
+	}
+	
+	/*
+	 * Unfolds the net with the current BPstructBP and with the original implementation, and compares the
+	 * number of events, conditions and cut-off events. Each arc of the net is given as { place before,
+	 * transition, place after }, the first place holds the token.
+	 */
+	private static void assertSameUnfolding(String[] transitions, int[][] arcs, int places) {
+		BPstructBP bp = new Unfolder_PetriNet(newNet(transitions, arcs, places), BPstructBP.MODE.EQUAL_DFS, getSilent(transitions)).getBP();
+		
+		// the original implementation, on its own copy of the net as the unfolder relabels it
+		Unfolder_PetriNet referenceUnfolder = new Unfolder_PetriNet(newNet(transitions, arcs, places), BPstructBP.MODE.EQUAL_DFS, getSilent(transitions));
+		Options options = new Options(referenceUnfolder.getSys());
+		options.configure_PetriNet();
+		options.configure_stopIfUnSafe();
+		ReferenceBPstructBP reference = new ReferenceBPstructBP(referenceUnfolder.getSys(), options);
+		reference.setMode(ReferenceBPstructBP.MODE.EQUAL_DFS);
+		reference.setSilent(getSilent(transitions));
+		
+		while (bp.step() > 0) { }
+		while (reference.step() > 0) { }
+		assertEquals(reference.getBranchingProcess().getAllEvents().size(), bp.getBranchingProcess().getAllEvents().size());
+		assertEquals(reference.getBranchingProcess().getAllConditions().size(), bp.getBranchingProcess().getAllConditions().size());
+		assertEquals(getCutOffEvents(reference), getCutOffEvents(bp));
+	}
+	
+	private static PetriNet newNet(String[] transitions, int[][] arcs, int places) {
+		PetriNet net = new PetriNet();
+		Place[] p = new Place[places];
+		for (int i = 0; i < places; i++) {
+			p[i] = net.addPlace("p" + i);
+		}
+		Transition[] t = new Transition[transitions.length];
+		for (int i = 0; i < transitions.length; i++) {
+			t[i] = net.addTransition(transitions[i]);
+		}
+		net.setTokens(p[0], 1);
+		Set<String> added = new HashSet<String>();
+		for (int[] arc : arcs) {
+			// the same arc can be listed by several tuples, e.g., the input of a synchronizing transition
+			if (added.add("p" + arc[0] + ">" + arc[1])) {
+				net.addArc(p[arc[0]], t[arc[1]]);
+			}
+			if (added.add(arc[1] + ">p" + arc[2])) {
+				net.addArc(t[arc[1]], p[arc[2]]);
+			}
+		}
+		return net;
+	}
+	
+	private static HashSet<String> getSilent(String[] transitions) {
+		HashSet<String> silent = new HashSet<String>();
+		for (String t : transitions) {
+			if (t.startsWith("tau ")) {
+				silent.add(t);
+			}
+		}
+		return silent;
+	}
+	
+	private static int getCutOffEvents(DNodeBP bp) {
+		int cutOffEvents = 0;
+		for (DNode e : bp.getBranchingProcess().getAllEvents()) {
+			if (e.isCutOff) {
+				cutOffEvents++;
+			}
+		}
+		return cutOffEvents;
+	}
+}
@@ -0,0 +1,166 @@
+package beamline.miners.behavioalconformance.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+
+/**
+ * Checks the replay on the compiled tables against the replay on the relations of the original
+ * implementation
+ */
+public class LocalConformanceStatusTest {
+	
+	private static final String[] ACTIVITIES = { "a", "b", "c", "d" };
+	
+	private Set<DirectFollowingRelation> allowed = new HashSet<DirectFollowingRelation>();
+	private Map<DirectFollowingRelation, Pair<Integer, Integer>> minMaxRelationsBefore = new HashMap<DirectFollowingRelation, Pair<Integer, Integer>>();
+	private Map<DirectFollowingRelation, Integer> minRelationsAfter = new HashMap<DirectFollowingRelation, Integer>();
+	
+	/*
+	 * a -> c and d -> a have no min/max before, so their completeness is NaN, while b -> b and c -> b have
+	 * no min after, so their confidence is NaN. d -> d is not allowed but has a min after, which counts
+	 * for the maximum.
+	 */
+	public LocalConformanceStatusTest() {
+		allow("a", "b", 0, 0, 3);
+		allow("b", "c", 1, 2, 2);
+		allow("c", "d", 2, 4, 0);
+		allow("b", "b", 1, 3, null);
+		allow("c", "b", 2, 2, null);
+		allow("a", "c", null, null, 2);
+		allow("d", "a", null, null, 4);
+		minRelationsAfter.put(new DirectFollowingRelation("d", "d"), 5);
+	}
+	
+	@Test
+	public void replayMatchesTheRelations() {
+		LocalModelStructure lms = newStructure();
+		List<String> traces = Arrays.asList(
+				"a b c d",
+				"a b b b c b c d a b",
+				"a c d x a b",
+				"x a b",
+				"x y",
+				"a d c",
+				"b c d a c",
+				"a");
+		for (String trace : traces) {
+			LocalConformanceStatus status = new LocalConformanceStatus(lms);
+			ReferenceStatus reference = new ReferenceStatus();
+			for (String activity : trace.split(" ")) {
+				status.replayActivity(lms.getActivityId(activity));
+				reference.replay(activity);
+				String message = trace + " at " + activity;
+				assertEquals(message, reference.conformance, status.getConformance(), 0);
+				assertEquals(message, reference.completeness, status.getCompleteness(), 0);
+				assertEquals(message, reference.confidence, status.getConfidence(), 0);
+				assertEquals(message, reference.lastObservedViolation, status.isLastObservedViolation());
+			}
+		}
+	}
+	
+	private void allow(String left, String right, Integer minBefore, Integer maxBefore, Integer minAfter) {
+		DirectFollowingRelation relation = new DirectFollowingRelation(left, right);
+		allowed.add(relation);
+		if (minBefore != null) {
+			minMaxRelationsBefore.put(relation, Pair.of(minBefore, maxBefore));
+		}
+		if (minAfter != null) {
+			minRelationsAfter.put(relation, minAfter);
+		}
+	}
+	
+	private LocalModelStructure newStructure() {
+		int n = ACTIVITIES.length;
+		long[] allowedMatrix = new long[(n * n + 63) >>> 6];
+		int[] minBefore = new int[n * n];
+		int[] maxBefore = new int[n * n];
+		int[] minAfter = new int[n * n];
+		Arrays.fill(minBefore, LocalModelStructure.UNDEFINED);
+		Arrays.fill(maxBefore, LocalModelStructure.UNDEFINED);
+		Arrays.fill(minAfter, LocalModelStructure.UNDEFINED);
+		for (int left = 0; left < n; left++) {
+			for (int right = 0; right < n; right++) {
+				DirectFollowingRelation relation = new DirectFollowingRelation(ACTIVITIES[left], ACTIVITIES[right]);
+				int relationId = left * n + right;
+				if (allowed.contains(relation)) {
+					allowedMatrix[relationId >>> 6] |= 1L << relationId;
+				}
+				if (minMaxRelationsBefore.containsKey(relation)) {
+					minBefore[relationId] = minMaxRelationsBefore.get(relation).getLeft();
+					maxBefore[relationId] = minMaxRelationsBefore.get(relation).getRight();
+				}
+				if (minRelationsAfter.containsKey(relation)) {
+					minAfter[relationId] = minRelationsAfter.get(relation);
+				}
+			}
+		}
+		return new LocalModelStructure(ACTIVITIES, allowedMatrix, minBefore, maxBefore, minAfter, false);
+	}
+	
+	/*
+	 * The replay of the original LocalConformanceStatus, on the relations of the test. Where the original
+	 * implementation failed on a missing min/max before or min after, the score keeps its previous value.
+	 */
+	private class ReferenceStatus {
+		
+		private int correct = 0;
+		private int incorrect = 0;
+		private String lastActivity = null;
+		private Set<DirectFollowingRelation> observedRelations = new HashSet<DirectFollowingRelation>();
+		private double conformance = 0d;
+		private double completeness = 0d;
+		private double confidence = 0d;
+		private boolean lastObservedViolation = false;
+		
+		private void replay(String activity) {
+			if (lastActivity != null) {
+				DirectFollowingRelation relation = new DirectFollowingRelation(lastActivity, activity);
+				if (allowed.contains(relation)) {
+					if (observedRelations.add(relation)) {
+						correct++;
+					}
+					lastObservedViolation = true;
+				} else {
+					incorrect++;
+					lastObservedViolation = false;
+				}
+				conformance = (double) correct / (correct + incorrect);
+				
+				if (allowed.contains(relation) && minMaxRelationsBefore.containsKey(relation)) {
+					Pair<Integer, Integer> minMax = minMaxRelationsBefore.get(relation);
+					int observed = observedRelations.size();
+					if (observed >= minMax.getLeft() && observed <= minMax.getRight()) {
+						completeness = 1d;
+					} else {
+						double comp = observed / (minMax.getLeft() + 1d);
+						if (observed > (minMax.getLeft() + 1d)) {
+							comp = observed / (minMax.getRight() + 1d);
+						}
+						if (comp > 1) {
+							comp = 1;
+						}
+						completeness = comp;
+					}
+				}
+				
+				if (allowed.contains(relation) && minRelationsAfter.containsKey(relation)) {
+					double maxOfMinRelationsAfter = Double.MIN_VALUE;
+					for (Integer v : minRelationsAfter.values()) {
+						maxOfMinRelationsAfter = Math.max(maxOfMinRelationsAfter, v);
+					}
+					confidence = 1d - (minRelationsAfter.get(relation) / maxOfMinRelationsAfter);
+				}
+			}
+			lastActivity = activity;
+		}
+	}
+}
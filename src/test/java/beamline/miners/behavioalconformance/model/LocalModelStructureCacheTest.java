@@ -0,0 +1,29 @@
+package beamline.miners.behavioalconformance.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.semantics.petrinet.Marking;
+
+public class LocalModelStructureCacheTest {
+
+	@Test
+	public void netsWithSameLabelsDoNotShareStructures() throws Exception {
+		Pair<Petrinet, Marking> sequence = TestNets.sequence();
+		Pair<Petrinet, Marking> choice = TestNets.choice();
+		
+		LocalModelStructureCache cache = new LocalModelStructureCache(2);
+		LocalModelStructure sequenceLms = cache.get(sequence.getLeft(), sequence.getRight());
+		LocalModelStructure choiceLms = cache.get(choice.getLeft(), choice.getRight());
+		assertEquals(2, cache.size());
+		assertSame(sequenceLms, cache.get(sequence.getLeft(), sequence.getRight()));
+		
+		assertTrue(sequenceLms.isAllowed(sequenceLms.getActivityId("a"), sequenceLms.getActivityId("b")));
+		assertFalse(choiceLms.isAllowed(choiceLms.getActivityId("a"), choiceLms.getActivityId("b")));
+	}
+}
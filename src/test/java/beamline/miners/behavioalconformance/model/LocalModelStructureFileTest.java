@@ -0,0 +1,152 @@
+package beamline.miners.behavioalconformance.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.graphbased.directed.petrinet.impl.PetrinetFactory;
+import org.processmining.models.semantics.petrinet.Marking;
+
+public class LocalModelStructureFileTest {
+	
+	private static final String FINGERPRINT = "000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f";
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	/*
+	 * a -> b is allowed with min/max 1/2 relations before and 3 after, b -> a is allowed with no min/max
+	 */
+	private static LocalModelStructure newStructure() {
+		int u = LocalModelStructure.UNDEFINED;
+		return new LocalModelStructure(
+				new String[] { "a", "b" },
+				new long[] { (1L << 1) | (1L << 2) },
+				new int[] { u, 1, u, u },
+				new int[] { u, 2, u, u },
+				new int[] { u, 3, u, u },
+				true);
+	}
+	
+	@Test
+	public void writeThenReadKeepsTheTables() throws IOException {
+		LocalModelStructure lms = newStructure();
+		File file = new File(folder.getRoot(), "lms.bin");
+		LocalModelStructureFile.write(lms, FINGERPRINT, file);
+		LocalModelStructure read = LocalModelStructureFile.read(file, FINGERPRINT);
+		
+		assertEquals(lms.getActivitiesCount(), read.getActivitiesCount());
+		assertEquals(lms.isApproximated(), read.isApproximated());
+		assertEquals(lms.getAllowedRelationsCount(), read.getAllowedRelationsCount());
+		assertEquals(lms.getMaxOfMinRelationsAfter(), read.getMaxOfMinRelationsAfter(), 0);
+		for (int left = 0; left < lms.getActivitiesCount(); left++) {
+			assertEquals(lms.getActivityLabel(left), read.getActivityLabel(left));
+			for (int right = 0; right < lms.getActivitiesCount(); right++) {
+				assertEquals(lms.isAllowed(left, right), read.isAllowed(left, right));
+				assertEquals(lms.getAllowedRelationIndex(left, right), read.getAllowedRelationIndex(left, right));
+				assertEquals(lms.getMinRelationsBefore(left, right), read.getMinRelationsBefore(left, right));
+				assertEquals(lms.getMaxRelationsBefore(left, right), read.getMaxRelationsBefore(left, right));
+				assertEquals(lms.getMinRelationsAfter(left, right), read.getMinRelationsAfter(left, right));
+			}
+		}
+		for (int relation = 0; relation < lms.getAllowedRelationsCount(); relation++) {
+			assertEquals(lms.getConfidence(relation), read.getConfidence(relation), 0);
+			for (int observed = 0; observed < 4; observed++) {
+				assertEquals(lms.getCompleteness(relation, observed), read.getCompleteness(relation, observed), 0);
+			}
+		}
+		assertEquals(lms.toString(), read.toString());
+		
+		// the file does not change when written again
+		File copy = new File(folder.getRoot(), "copy.bin");
+		LocalModelStructureFile.write(read, FINGERPRINT, copy);
+		assertArrayEquals(Files.readAllBytes(file.toPath()), Files.readAllBytes(copy.toPath()));
+	}
+	
+	@Test(expected = IOException.class)
+	public void readRejectsCorruptedFile() throws IOException {
+		File file = new File(folder.getRoot(), "lms.bin");
+		LocalModelStructureFile.write(newStructure(), FINGERPRINT, file);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			// flip one bit of the min relations before
+			long position = raf.length() - 8 - 3 * 4 * 4 + 4;
+			raf.seek(position);
+			int value = raf.read();
+			raf.seek(position);
+			raf.write(value ^ 1);
+		}
+		LocalModelStructureFile.read(file, FINGERPRINT);
+	}
+	
+	@Test
+	public void readRejectsOtherNets() throws IOException {
+		File file = new File(folder.getRoot(), "lms.bin");
+		LocalModelStructureFile.write(newStructure(), FINGERPRINT, file);
+		try {
+			LocalModelStructureFile.read(file, FINGERPRINT.replace('0', 'f'));
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("different net"));
+			return;
+		}
+		throw new AssertionError("The file has been read for a different net");
+	}
+
+	@Test
+	public void fingerprintDistinguishesNetsWithSameLabels() {
+		Pair<Petrinet, Marking> sequence = TestNets.sequence();
+		Pair<Petrinet, Marking> choice = TestNets.choice();
+		
+		assertNotEquals(
+				LocalModelStructureFile.fingerprint(sequence.getLeft(), sequence.getRight()),
+				LocalModelStructureFile.fingerprint(choice.getLeft(), choice.getRight()));
+	}
+	
+	@Test
+	public void fingerprintDependsOnMarkedPlace() {
+		Petrinet net = PetrinetFactory.newPetrinet("net");
+		Place p1 = net.addPlace("");
+		Place p2 = net.addPlace("");
+		Transition a = net.addTransition("a");
+		net.addArc(p1, a);
+		net.addArc(a, p2);
+		
+		assertNotEquals(
+				LocalModelStructureFile.fingerprint(net, new Marking(Collections.singleton(p1))),
+				LocalModelStructureFile.fingerprint(net, new Marking(Collections.singleton(p2))));
+	}
+	
+	@Test
+	public void fingerprintIgnoresNodeOrder() {
+		Pair<Petrinet, Marking> sequence = TestNets.sequence();
+		
+		// the same sequence, with nodes and arcs added in reverse order
+		Petrinet reversed = PetrinetFactory.newPetrinet("net");
+		Place r3 = reversed.addPlace("");
+		Place r2 = reversed.addPlace("");
+		Place r1 = reversed.addPlace("");
+		Transition rb = reversed.addTransition("b");
+		Transition ra = reversed.addTransition("a");
+		reversed.addArc(r2, rb);
+		reversed.addArc(rb, r3);
+		reversed.addArc(r1, ra);
+		reversed.addArc(ra, r2);
+		
+		assertEquals(
+				LocalModelStructureFile.fingerprint(sequence.getLeft(), sequence.getRight()),
+				LocalModelStructureFile.fingerprint(reversed, new Marking(Collections.singleton(r1))));
+	}
+}
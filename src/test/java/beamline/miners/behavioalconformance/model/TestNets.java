@@ -0,0 +1,161 @@
+package beamline.miners.behavioalconformance.model;
+
+import java.util.Collections;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.graphbased.directed.petrinet.impl.PetrinetFactory;
+import org.processmining.models.semantics.petrinet.Marking;
+
+/**
+ * Small nets shared by the tests, each with its initial marking
+ */
+public class TestNets {
+	
+	private TestNets() { }
+	
+	/**
+	 * P1 -> a -> P2 -> b -> P3
+	 * 
+	 * @return the net and its initial marking
+	 */
+	public static Pair<Petrinet, Marking> sequence() {
+		Petrinet net = PetrinetFactory.newPetrinet("net");
+		Place p1 = net.addPlace("");
+		Place p2 = net.addPlace("");
+		Place p3 = net.addPlace("");
+		Transition a = net.addTransition("a");
+		Transition b = net.addTransition("b");
+		net.addArc(p1, a);
+		net.addArc(a, p2);
+		net.addArc(p2, b);
+		net.addArc(b, p3);
+		return Pair.of(net, new Marking(Collections.singleton(p1)));
+	}
+	
+	/**
+	 * P1 -> a -> P2, P1 -> b -> P3: same labels of {@link #sequence()}, different behavior
+	 * 
+	 * @return the net and its initial marking
+	 */
+	public static Pair<Petrinet, Marking> choice() {
+		Petrinet net = PetrinetFactory.newPetrinet("net");
+		Place p1 = net.addPlace("");
+		Place p2 = net.addPlace("");
+		Place p3 = net.addPlace("");
+		Transition a = net.addTransition("a");
+		Transition b = net.addTransition("b");
+		net.addArc(p1, a);
+		net.addArc(a, p2);
+		net.addArc(p1, b);
+		net.addArc(b, p3);
+		return Pair.of(net, new Marking(Collections.singleton(p1)));
+	}
+	
+	/**
+	 * P1 -> a -> (P2, P3), P2 -> b -> P4, P3 -> c -> P5, (P4, P5) -> d -> P6
+	 * 
+	 * @return the net and its initial marking
+	 */
+	public static Pair<Petrinet, Marking> concurrency() {
+		Petrinet net = PetrinetFactory.newPetrinet("net");
+		Place p1 = net.addPlace("");
+		Place p2 = net.addPlace("");
+		Place p3 = net.addPlace("");
+		Place p4 = net.addPlace("");
+		Place p5 = net.addPlace("");
+		Place p6 = net.addPlace("");
+		Transition a = net.addTransition("a");
+		Transition b = net.addTransition("b");
+		Transition c = net.addTransition("c");
+		Transition d = net.addTransition("d");
+		net.addArc(p1, a);
+		net.addArc(a, p2);
+		net.addArc(a, p3);
+		net.addArc(p2, b);
+		net.addArc(b, p4);
+		net.addArc(p3, c);
+		net.addArc(c, p5);
+		net.addArc(p4, d);
+		net.addArc(p5, d);
+		net.addArc(d, p6);
+		return Pair.of(net, new Marking(Collections.singleton(p1)));
+	}
+	
+	/**
+	 * P1 -> a -> P2, P2 -> b -> P1, P2 -> c -> P3
+	 * 
+	 * @return the net and its initial marking
+	 */
+	public static Pair<Petrinet, Marking> loop() {
+		Petrinet net = PetrinetFactory.newPetrinet("net");
+		Place p1 = net.addPlace("");
+		Place p2 = net.addPlace("");
+		Place p3 = net.addPlace("");
+		Transition a = net.addTransition("a");
+		Transition b = net.addTransition("b");
+		Transition c = net.addTransition("c");
+		net.addArc(p1, a);
+		net.addArc(a, p2);
+		net.addArc(p2, b);
+		net.addArc(b, p1);
+		net.addArc(p2, c);
+		net.addArc(c, p3);
+		return Pair.of(net, new Marking(Collections.singleton(p1)));
+	}
+	
+	/**
+	 * P1 -> a -> P2, P2 -> b -> P3, P2 -> tau 1 -> P3, P3 -> c -> P4: b can be skipped silently
+	 * 
+	 * @return the net and its initial marking
+	 */
+	public static Pair<Petrinet, Marking> skip() {
+		Petrinet net = PetrinetFactory.newPetrinet("net");
+		Place p1 = net.addPlace("");
+		Place p2 = net.addPlace("");
+		Place p3 = net.addPlace("");
+		Place p4 = net.addPlace("");
+		Transition a = net.addTransition("a");
+		Transition b = net.addTransition("b");
+		Transition tau = net.addTransition("tau 1");
+		Transition c = net.addTransition("c");
+		net.addArc(p1, a);
+		net.addArc(a, p2);
+		net.addArc(p2, b);
+		net.addArc(b, p3);
+		net.addArc(p2, tau);
+		net.addArc(tau, p3);
+		net.addArc(p3, c);
+		net.addArc(c, p4);
+		return Pair.of(net, new Marking(Collections.singleton(p1)));
+	}
+	
+	/**
+	 * P1 -> a -> P2, P2 -> tau 1 -> P3, P3 -> tau 2 -> P2, P3 -> b -> P4: the silent transitions form a
+	 * cycle
+	 * 
+	 * @return the net and its initial marking
+	 */
+	public static Pair<Petrinet, Marking> tauCycle() {
+		Petrinet net = PetrinetFactory.newPetrinet("net");
+		Place p1 = net.addPlace("");
+		Place p2 = net.addPlace("");
+		Place p3 = net.addPlace("");
+		Place p4 = net.addPlace("");
+		Transition a = net.addTransition("a");
+		Transition tau1 = net.addTransition("tau 1");
+		Transition tau2 = net.addTransition("tau 2");
+		Transition b = net.addTransition("b");
+		net.addArc(p1, a);
+		net.addArc(a, p2);
+		net.addArc(p2, tau1);
+		net.addArc(tau1, p3);
+		net.addArc(p3, tau2);
+		net.addArc(tau2, p2);
+		net.addArc(p3, b);
+		net.addArc(b, p4);
+		return Pair.of(net, new Marking(Collections.singleton(p1)));
+	}
+}
@@ -0,0 +1,91 @@
+package beamline.miners.behavioalconformance.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.transitionsystem.CoverabilityGraph;
+import org.processmining.models.graphbased.directed.transitionsystem.State;
+import org.processmining.models.graphbased.directed.transitionsystem.Transition;
+import org.processmining.models.semantics.petrinet.CTMarking;
+import org.processmining.models.semantics.petrinet.Marking;
+
+import beamline.miners.behavioalconformance.model.DirectFollowingRelation;
+import beamline.miners.behavioalconformance.model.TestNets;
+
+/**
+ * Checks that the reachability graph of 1-safe nets gives the same results of the coverability graph
+ */
+public class SafeReachabilityGraphTest {
+	
+	@Test
+	public void sequence() throws Exception {
+		assertSameAsCoverabilityGraph(TestNets.sequence());
+	}
+	
+	@Test
+	public void choice() throws Exception {
+		assertSameAsCoverabilityGraph(TestNets.choice());
+	}
+	
+	@Test
+	public void concurrency() throws Exception {
+		assertSameAsCoverabilityGraph(TestNets.concurrency());
+	}
+	
+	@Test
+	public void loop() throws Exception {
+		assertSameAsCoverabilityGraph(TestNets.loop());
+	}
+	
+	@Test
+	public void tauCycle() throws Exception {
+		assertSameAsCoverabilityGraph(TestNets.tauCycle());
+	}
+	
+	private static void assertSameAsCoverabilityGraph(Pair<Petrinet, Marking> net) throws Exception {
+		SafeReachabilityGraph graph = SafeReachabilityGraph.build(net.getLeft(), net.getRight());
+		CoverabilityGraph coverabilityGraph = CGHelper.generate(net.getLeft(), net.getRight());
+		assertNotNull(graph);
+		assertEquals(coverabilityGraph.getNodes().size(), graph.getStatesCount());
+		assertEquals(coverabilityGraph.getEdges().size(), graph.getEdgesCount());
+		
+		// direct following relations, as in LocalModelStructure
+		Set<DirectFollowingRelation> expectedRelations = new HashSet<DirectFollowingRelation>();
+		TauClosure closure = new TauClosure(coverabilityGraph);
+		for (State s : coverabilityGraph.getNodes()) {
+			for (Transition first : closure.getIncomingNonTau(s)) {
+				for (Transition second : closure.getOutgoingNonTau(s)) {
+					expectedRelations.add(new DirectFollowingRelation(first.getLabel(), second.getLabel()));
+				}
+			}
+		}
+		Set<DirectFollowingRelation> relations = new HashSet<DirectFollowingRelation>();
+		for (int s = 0; s < graph.getStatesCount(); s++) {
+			for (int first : graph.getIncomingNonTau(s)) {
+				for (int second : graph.getOutgoingNonTau(s)) {
+					relations.add(new DirectFollowingRelation(graph.getLabel(first), graph.getLabel(second)));
+				}
+			}
+		}
+		assertEquals(expectedRelations, relations);
+		
+		// relations on the shortest paths from the initial state, which is the first state of the graph
+		ShortestPathTree tree = new ShortestPathTree(coverabilityGraph.getNode(new CTMarking(net.getRight())));
+		int[] expectedCounts = new int[graph.getStatesCount()];
+		int i = 0;
+		for (State s : coverabilityGraph.getNodes()) {
+			expectedCounts[i++] = tree.getPathRelationsCount(s);
+		}
+		int[] counts = graph.getPathRelationsCounts(graph.getShortestPathTree(0));
+		Arrays.sort(expectedCounts);
+		Arrays.sort(counts);
+		assertEquals(Arrays.toString(expectedCounts), Arrays.toString(counts));
+	}
+}
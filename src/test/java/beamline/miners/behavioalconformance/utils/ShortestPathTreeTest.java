@@ -0,0 +1,64 @@
+package beamline.miners.behavioalconformance.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+import org.processmining.models.graphbased.directed.analysis.ShortestPathFactory;
+import org.processmining.models.graphbased.directed.analysis.ShortestPathInfo;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.transitionsystem.CoverabilityGraph;
+import org.processmining.models.graphbased.directed.transitionsystem.State;
+import org.processmining.models.graphbased.directed.transitionsystem.Transition;
+import org.processmining.models.semantics.petrinet.CTMarking;
+import org.processmining.models.semantics.petrinet.Marking;
+
+import beamline.miners.behavioalconformance.model.TestNets;
+
+/**
+ * Checks the counts of the tree against the all-pairs shortest paths of ProM. When several shortest paths
+ * exist (e.g., with concurrency) the two may choose different ones, so the nets are such that all the
+ * shortest paths to a state observe the same number of relations.
+ */
+public class ShortestPathTreeTest {
+	
+	@Test
+	public void sequence() throws Exception {
+		assertSameAsAllPairsShortestPaths(TestNets.sequence());
+	}
+	
+	@Test
+	public void choice() throws Exception {
+		assertSameAsAllPairsShortestPaths(TestNets.choice());
+	}
+	
+	@Test
+	public void concurrency() throws Exception {
+		assertSameAsAllPairsShortestPaths(TestNets.concurrency());
+	}
+	
+	@Test
+	public void loop() throws Exception {
+		assertSameAsAllPairsShortestPaths(TestNets.loop());
+	}
+	
+	@Test
+	public void tauCycle() throws Exception {
+		assertSameAsAllPairsShortestPaths(TestNets.tauCycle());
+	}
+	
+	private static void assertSameAsAllPairsShortestPaths(Pair<Petrinet, Marking> net) throws Exception {
+		CoverabilityGraph graph = CGHelper.generate(net.getLeft(), net.getRight());
+		State start = graph.getNode(new CTMarking(net.getRight()));
+		ShortestPathTree tree = new ShortestPathTree(start);
+		ShortestPathInfo<State, Transition> calculator = ShortestPathFactory.calculateAllShortestDistanceDijkstra(graph);
+		for (State s : graph.getNodes()) {
+			if (s.equals(start)) {
+				assertEquals(0, tree.getPathRelationsCount(s));
+			} else {
+				assertEquals(TSUtils.getShortestPath(calculator, start, s).size(), tree.getPathRelationsCount(s));
+				assertEquals(TSUtils.getShortestPath(tree, s).size(), tree.getPathRelationsCount(s));
+			}
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package beamline.miners.behavioalconformance.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.transitionsystem.CoverabilityGraph;
+import org.processmining.models.graphbased.directed.transitionsystem.State;
+import org.processmining.models.graphbased.directed.transitionsystem.Transition;
+import org.processmining.models.semantics.petrinet.Marking;
+
+import beamline.miners.behavioalconformance.model.TestNets;
+
+/**
+ * Checks the closure against the recursive visits of {@link TSUtils}, which terminate only if the silent
+ * transitions are acyclic
+ */
+public class TauClosureTest {
+	
+	@Test
+	public void sequence() throws Exception {
+		assertSameAsRecursiveClosure(TestNets.sequence());
+	}
+	
+	@Test
+	public void choice() throws Exception {
+		assertSameAsRecursiveClosure(TestNets.choice());
+	}
+	
+	@Test
+	public void concurrency() throws Exception {
+		assertSameAsRecursiveClosure(TestNets.concurrency());
+	}
+	
+	@Test
+	public void loop() throws Exception {
+		assertSameAsRecursiveClosure(TestNets.loop());
+	}
+	
+	@Test
+	public void skip() throws Exception {
+		assertSameAsRecursiveClosure(TestNets.skip());
+	}
+	
+	@Test
+	public void tauCycle() throws Exception {
+		Pair<Petrinet, Marking> net = TestNets.tauCycle();
+		CoverabilityGraph graph = CGHelper.generate(net.getLeft(), net.getRight());
+		TauClosure closure = new TauClosure(graph);
+		
+		// both states of the cycle are entered with a and left with b
+		int statesInCycle = 0;
+		for (State s : graph.getNodes()) {
+			Set<String> incoming = getLabels(closure.getIncomingNonTau(s));
+			Set<String> outgoing = getLabels(closure.getOutgoingNonTau(s));
+			if (incoming.contains("a")) {
+				assertEquals(Collections.singleton("a"), incoming);
+				assertEquals(Collections.singleton("b"), outgoing);
+				statesInCycle++;
+			}
+		}
+		assertEquals(2, statesInCycle);
+	}
+	
+	private static void assertSameAsRecursiveClosure(Pair<Petrinet, Marking> net) throws Exception {
+		CoverabilityGraph graph = CGHelper.generate(net.getLeft(), net.getRight());
+		TauClosure closure = new TauClosure(graph);
+		for (State s : graph.getNodes()) {
+			assertEquals(TSUtils.getIncomingNonTau(s, new HashSet<Transition>()), closure.getIncomingNonTau(s));
+			assertEquals(TSUtils.getOutgoingNonTau(s, new HashSet<Transition>()), closure.getOutgoingNonTau(s));
+		}
+	}
+	
+	private static Set<String> getLabels(Set<Transition> transitions) {
+		Set<String> labels = new HashSet<String>();
+		for (Transition t : transitions) {
+			labels.add(t.getLabel());
+		}
+		return labels;
+	}
+}